@@ -1,54 +1,233 @@
 package fr.unice.polytech.soa1.cookbook.flows;
 
 
+import fr.unice.polytech.soa1.cookbook.TaxComputationService;
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.metrics.ExchangeMetrics;
+import fr.unice.polytech.soa1.cookbook.flows.metrics.LatencyHistogram;
+import fr.unice.polytech.soa1.cookbook.flows.metrics.Metrics;
+import fr.unice.polytech.soa1.cookbook.flows.utils.AdaptiveLimiter;
+import fr.unice.polytech.soa1.cookbook.flows.utils.AsyncTaxCall;
+import fr.unice.polytech.soa1.cookbook.flows.utils.CircuitBreaker;
+import fr.unice.polytech.soa1.cookbook.flows.utils.IdentifierPool;
+import fr.unice.polytech.soa1.cookbook.flows.utils.LocalTaxComputation;
 import fr.unice.polytech.soa1.cookbook.flows.utils.RequestBuilder;
+import fr.unice.polytech.soa1.cookbook.flows.utils.SampledLog;
 import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.utils.TaxFormReader;
+import fr.unice.polytech.soa1.cookbook.flows.utils.TaxRequestBatcher;
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
 import org.apache.camel.builder.RouteBuilder;
 
 import javax.xml.transform.Source;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathFactory;
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static fr.unice.polytech.soa1.cookbook.flows.utils.Endpoints.GEN_SERVICE;
 import static fr.unice.polytech.soa1.cookbook.flows.utils.Endpoints.TAX_COMPUTATION_SERVICE;
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.*;
 
 
 public class CallExternalPartners extends RouteBuilder {
 
+	// Latency of the parsing of the responses of the tax computation service (the calls themselves are
+	// measured as endpoints, see ExchangeMetrics.call)
+	private static final String PARSE_LATENCY = "partner.taxComputation.parse";
+	private static final String PARSE_BATCH_LATENCY = "partner.taxComputation.parseBatch";
 
 	@Override
 	public void configure() throws Exception {
 
-		// Consuming a rest service with a Get
+		// Each partner is protected by a circuit breaker: while it is down, calls fail immediately
+		// (PartnerException), and the citizens are retried later (see HandleACitizen)
+		CircuitBreaker generatorBreaker = new CircuitBreaker("generator", BREAKER_FAILURES, BREAKER_OPEN_TIME);
+		CircuitBreaker taxBreaker = new CircuitBreaker("tax computation", BREAKER_FAILURES, BREAKER_OPEN_TIME);
+
+		// Identifiers are taken from a local pool, refilled by blocks in the background
 		from("direct:generator")
+				.bean(buildIdentifierPool(generatorBreaker), "take")
+				;
+
+		// Consuming a rest service with a Get, asking for a block of identifiers
+		from("direct:generatorBlock")
 				.setHeader(Exchange.HTTP_METHOD, constant("GET"))
+				.setHeader(Exchange.HTTP_QUERY, constant("count=" + ID_BLOCK_SIZE))
 				.setBody(constant(""))
 				.to(GEN_SERVICE + "/cxf/demo/generators/demogen")
 				.process(readResponseStream)
-				.process(uuidCleaner)
+				.process(uuidsExtractor)
 				;
 
-		// SOAP: Using the simple method
+		// SOAP: Using the simple method (one call per citizen, batched with other citizens, or in-JVM call).
+		// The unbatched calls (direct:xxxTaxCall) are not limited by the AdaptiveLimiter of the batches: they are
+		// synchronous, so at most one of them is in flight per thread consuming citizens (the CITIZEN_CONSUMERS
+		// threads, and the consumer of the retry queue)
 		from("direct:simpleTaxMethod")
-				.log("    Computing ${body.lastName} with simple computation [uid: ${property.p_uuid}]")
+				.process(SampledLog.of(getClass(), "    Computing ${body.lastName} with simple computation [uid: ${property.p_uuid}]"))
+				.to(taxRoute("simpleTax"))
+				;
+
+		from("direct:simpleTaxCall")
 				.bean(RequestBuilder.class, "buildSimpleRequest(${body}, ${property.p_uuid})")
-				.to(TAX_COMPUTATION_SERVICE)
-				.process(result2taxForm)
+				.process(breakerCall(taxBreaker, TAX_COMPUTATION_SERVICE))
+				.process(Metrics.timed(PARSE_LATENCY, result2taxForm))
 				;
 
-		// SOAP: Using the complex method
+		// SOAP: Using the complex method (one call per citizen, batched with other citizens, or in-JVM call)
 		from("direct:complexTaxMethod")
-				.log("    Computing ${body.lastName} with advanced computation [uid: ${property.p_uuid}]")
+				.process(SampledLog.of(getClass(), "    Computing ${body.lastName} with advanced computation [uid: ${property.p_uuid}]"))
+				.to(taxRoute("complexTax"))
+				;
+
+		from("direct:complexTaxCall")
 				.bean(RequestBuilder.class, "buildAdvancedRequest(${body}, ${property.p_uuid})")
-				.to(TAX_COMPUTATION_SERVICE)
-				.process(result2taxForm)
+				.process(breakerCall(taxBreaker, TAX_COMPUTATION_SERVICE))
+				.process(Metrics.timed(PARSE_LATENCY, result2taxForm))
 				;
 
+		// SOAP: batch operations, the batcher gives back to each citizen its own result (by identifier).
+		// Asynchronous: the exchange of a citizen holds no thread while its batch is computed, it is resumed by a
+		// TaxResults thread. The JMS consumer that dispatched the citizen still waits for all the citizens of its
+		// message to be handled before acknowledging it (see CitizenDispatcher).
+		// The number of concurrent batch calls is adapted to the latency of the service: when it slows down,
+		// citizens wait for their batch to be sent, up to the in-flight ceiling of HandleACitizen, which then
+		// stops consuming citizens from the queue
+		if (TAX_BATCH_SIZE > 1) {
+			ScheduledExecutorService timer =
+					getContext().getExecutorServiceManager().newSingleThreadScheduledExecutor(this, "TaxBatchTimer");
+			ExecutorService callers =
+					getContext().getExecutorServiceManager().newFixedThreadPool(this, "TaxBatchCallers", TAX_LIMIT_MAX);
+			ExecutorService results =
+					getContext().getExecutorServiceManager().newFixedThreadPool(this, "TaxResults", TAX_RESULT_WORKERS);
+			AdaptiveLimiter limiter = new AdaptiveLimiter(TAX_BATCH_CALLERS, TAX_LIMIT_MIN, TAX_LIMIT_MAX, TAX_LATENCY_TARGET);
+
+			from("direct:simpleTaxBatch")
+					.process(new AsyncTaxCall(buildBatcher(false, taxBreaker, limiter, timer, callers), results))
+					;
+
+			from("direct:complexTaxBatch")
+					.process(new AsyncTaxCall(buildBatcher(true, taxBreaker, limiter, timer, callers), results))
+					;
+		}
+
+		// In-JVM calls to the tax computation service deployed in the same container (no XML, no HTTP)
+		if ("local".equals(TAX_MODE)) {
+			LocalTaxComputation local = new LocalTaxComputation(lookupTaxComputation(), taxBreaker);
+
+			from("direct:simpleTaxLocal")
+					.bean(local, "simple(${body}, ${property.p_uuid})")
+					;
+
+			from("direct:complexTaxLocal")
+					.bean(local, "complex(${body}, ${property.p_uuid})")
+					;
+		}
+
+	}
+
+	// direct:xxxLocal, direct:xxxBatch or direct:xxxCall, according to the configuration
+	private static String taxRoute(String method) {
+		if ("local".equals(TAX_MODE))
+			return "direct:" + method + "Local";
+		return "direct:" + method + (TAX_BATCH_SIZE > 1 ? "Batch" : "Call");
+	}
+
+	// The tax computation service registered in the OSGi service registry by the ws-soap bundle
+	private TaxComputationService lookupTaxComputation() {
+		String name = TaxComputationService.class.getName();
+		TaxComputationService service = getContext().getRegistry().lookupByNameAndType(name, TaxComputationService.class);
+		if (service == null)
+			throw new IllegalStateException("No tax computation service in the container (" + name + "): "
+					+ "deploy the ws-soap bundle, or use -Dflows.tax.mode=soap");
+		return service;
+	}
+
+	// Sends the body to a partner endpoint through its breaker, the response becoming the body: a failure (or an
+	// open circuit) is a PartnerException
+	private Processor breakerCall(final CircuitBreaker breaker, final String uri) {
+		final ProducerTemplate template = getContext().createProducerTemplate();
+		return new Processor() {
+			public void process(final Exchange exchange) throws Exception {
+				Source response = breaker.call(new Callable<Source>() {
+					public Source call() throws Exception {
+						return ExchangeMetrics.call(getContext(), uri, new Callable<Source>() {
+							public Source call() throws Exception {
+								return template.requestBody(uri, exchange.getIn().getBody(), Source.class);
+							}
+						});
+					}
+				});
+				exchange.getIn().setBody(response);
+			}
+		};
+	}
+
+	// The pool calls the generator service (direct:generatorBlock) from its own thread
+	private IdentifierPool buildIdentifierPool(final CircuitBreaker breaker) {
+		final ProducerTemplate template = getContext().createProducerTemplate();
+		final Callable<List<String>> call = new Callable<List<String>>() {
+			@SuppressWarnings("unchecked") // uuidsExtractor produces a List<String>
+			public List<String> call() throws Exception {
+				return template.requestBody("direct:generatorBlock", "", List.class);
+			}
+		};
+		Callable<List<String>> source = new Callable<List<String>>() {
+			public List<String> call() throws Exception {
+				return breaker.call(call);
+			}
+		};
+		return new IdentifierPool(ID_LOW_WATER_MARK, ID_TIMEOUT, source,
+				getContext().getExecutorServiceManager().newSingleThreadExecutor(this, "IdentifierPool"));
+	}
+
+	// The batcher calls the batch operations of the tax computation service (simpleBatch, complexBatch),
+	// the breaker and the limiter being shared by all the batchers calling this service
+	private TaxRequestBatcher buildBatcher(final boolean advanced, final CircuitBreaker breaker,
+	                                       final AdaptiveLimiter limiter, ScheduledExecutorService timer,
+	                                       ExecutorService callers) {
+		final ProducerTemplate template = getContext().createProducerTemplate();
+		final RequestBuilder builder = new RequestBuilder();
+		final TaxFormReader reader = new TaxFormReader();
+		final LatencyHistogram parsing = Metrics.histogram(PARSE_BATCH_LATENCY);
+		TaxRequestBatcher.Partner partner = new TaxRequestBatcher.Partner() {
+			public Map<String, TaxForm> compute(List<Person> persons, List<String> uuids, final Runnable sending)
+					throws Exception {
+				final byte[] request = advanced ? builder.buildAdvancedBatchRequest(persons, uuids)
+				                                : builder.buildSimpleBatchRequest(persons, uuids);
+				return breaker.call(new Callable<Map<String, TaxForm>>() {
+					public Map<String, TaxForm> call() throws Exception {
+						limiter.acquire();
+						long start = System.currentTimeMillis();
+						boolean success = false;
+						try {
+							sending.run(); // the result timeout starts once a slot is granted
+							Source response = ExchangeMetrics.call(getContext(), TAX_COMPUTATION_SERVICE, new Callable<Source>() {
+								public Source call() throws Exception {
+									return template.requestBody(TAX_COMPUTATION_SERVICE, request, Source.class);
+								}
+							});
+							long parsed = System.nanoTime();
+							Map<String, TaxForm> forms = reader.readAll(response);
+							parsing.record(System.nanoTime() - parsed);
+							success = true;
+							return forms;
+						} finally {
+							limiter.release(System.currentTimeMillis() - start, success);
+						}
+					}
+				});
+			}
+		};
+		return new TaxRequestBatcher(TAX_BATCH_SIZE, TAX_BATCH_TIMEOUT, TAX_CALL_TIMEOUT, partner, timer, callers);
 	}
 
 	/**
@@ -68,26 +247,30 @@ public class CallExternalPartners extends RouteBuilder {
 		}
 	};
 
-	// transform "xxx" into xxx (removing starting and ending double quotes).
-	private static Processor uuidCleaner = new Processor() {
+	// transform ["xxx","yyy", ...] into a List(xxx, yyy, ...) (identifiers never contain double quotes).
+	private static Processor uuidsExtractor = new Processor() {
 		public void process(Exchange exchange) throws Exception {
 			String data = (String) exchange.getIn().getBody();
-			String cleaned = data.substring(1,data.length()-1);
-			exchange.getIn().setBody(cleaned);
+			List<String> uuids = new ArrayList<String>(ID_BLOCK_SIZE);
+			int start = data.indexOf('"');
+			while (start >= 0) {
+				int end = data.indexOf('"', start + 1);
+				uuids.add(data.substring(start + 1, end));
+				start = data.indexOf('"', end + 1);
+			}
+			exchange.getIn().setBody(uuids);
 		}
 	};
 
-	// Transform the response of the TaxComputation web service into a TaxForm Business Object (using XPath)
+	// Transform the response of the TaxComputation web service into a TaxForm Business Object
+	// (single forward scan reading amount and date, safe for concurrent exchanges)
 	private static Processor result2taxForm = new Processor() {
 
-		private XPath xpath = XPathFactory.newInstance().newXPath();    // feature:install camel-saxon
+		private final TaxFormReader reader = new TaxFormReader();
 
 		public void process(Exchange exchange) throws Exception {
 			Source response = (Source) exchange.getIn().getBody();
-			TaxForm result = new TaxForm();
-			result.setAmount(Double.parseDouble(xpath.evaluate("//amount/text()", response)));
-			result.setDate(xpath.evaluate("//date/text()", response));
-			exchange.getIn().setBody(result);
+			exchange.getIn().setBody(reader.readOne(response));
 		}
 	};
 
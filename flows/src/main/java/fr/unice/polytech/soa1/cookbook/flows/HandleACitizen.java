@@ -1,9 +1,28 @@
 package fr.unice.polytech.soa1.cookbook.flows;
 
 import static fr.unice.polytech.soa1.cookbook.flows.utils.Endpoints.*;
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.*;
 
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.metrics.Metrics;
+import fr.unice.polytech.soa1.cookbook.flows.storage.LetterSink;
+import fr.unice.polytech.soa1.cookbook.flows.utils.BinaryDataFormat;
+import fr.unice.polytech.soa1.cookbook.flows.utils.CitizenDispatcher;
 import fr.unice.polytech.soa1.cookbook.flows.utils.LetterWriter;
+import fr.unice.polytech.soa1.cookbook.flows.utils.PartnerException;
+import fr.unice.polytech.soa1.cookbook.flows.utils.SampledLog;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ThreadPoolRejectedPolicy;
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.builder.ThreadPoolProfileBuilder;
+import org.apache.camel.spi.ThreadPoolProfile;
+import org.apache.camel.support.LifecycleStrategySupport;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 
 
 /**
@@ -11,21 +30,43 @@ import org.apache.camel.builder.RouteBuilder;
  */
 public class HandleACitizen extends RouteBuilder {
 
+	// Latency histograms of the branches of the multicast (see Metrics)
+	static final String LETTER_LATENCY = "multicast.generateLetter";
+	static final String STORE_LATENCY = "multicast.storeTaxForm";
+
 	@Override
 	public void configure() throws Exception {
 
 		// Dead letter channel as a logger
 		errorHandler(deadLetterChannel("log:deadPool"));
 
+		// A citizen failing because of a partner (down, or circuit open) is parked on the retry queue
+		onException(PartnerException.class)
+				.handled(true)
+				.to("direct:retryCitizen")
+		;
+
+		// Unpacking the batches sent by the CSV handler, each Person being handled in its own exchange.
+		// The citizens of a batch are handled concurrently: while waiting for the tax computation partner,
+		// a citizen holds no thread (at most CITIZEN_IN_FLIGHT citizens handled at the same time). The consumer
+		// thread itself waits until all the citizens of its message are handled, then the message is acknowledged.
+		// Citizens not handled within CITIZEN_TIMEOUT roll the (transacted) message back, without going through
+		// the dead letter channel: the broker redelivers it, and the citizens of the message are handled again
+		from(HANDLE_CITIZEN + "?concurrentConsumers=" + CITIZEN_CONSUMERS + "&transacted=true")
+				.errorHandler(noErrorHandler())
+				.unmarshal(new BinaryDataFormat())  // byte[] -> List<Person>
+				.process(new CitizenDispatcher(getContext().getEndpoint("direct:handleACitizen"), CITIZEN_IN_FLIGHT, CITIZEN_TIMEOUT))
+		;
+
 		// Route to handle a given Person
-		from(HANDLE_CITIZEN)
-				.log("    Routing ${body.lastName} according to income ${body.income}")
-				.log("      Storing the Person as an exchange property")
-				.setProperty("person", body())
-				.log("      Calling an existing generator")
+		from("direct:handleACitizen")
+				.process(SampledLog.of(getClass(), "    Routing ${body.lastName} according to income ${body.income}"))
+				.process(SampledLog.of(getClass(), "      Storing the Person as an exchange property"))
+				.process(keepPerson)
+				.process(SampledLog.of(getClass(), "      Calling an existing generator"))
 				.to("direct:generator")
 				.setProperty("p_uuid", body())
-				.setBody(simple("${property.person}"))
+				.process(restorePerson)
 				.choice()
 					.when(simple("${body.income} >= 42000"))
 						.setProperty("tax_computation_method", constant("COMPLEX"))
@@ -36,11 +77,35 @@ public class HandleACitizen extends RouteBuilder {
 					.otherwise()
 						.to("direct:badCitizen").stop() // stopping the route for bad citizens
 				.end() // End of the content-based-router
-				.setHeader("person_uid", simple("${property.person.uid}"))
+				.removeHeader("retry_count") // the partners answered: a later failure starts a new series of retries
+				.process(identifyPerson)
 				.multicast()
 					.parallelProcessing()
+					.executorService(buildMulticastWorkers())
 					.to("direct:generateLetter")
-					.to(STORE_TAX_FORM)
+					.to("direct:storeTaxForm")
+		;
+
+		// Retry with exponential backoff: the citizen is delivered by the broker after the delay (ActiveMQ
+		// scheduler), and is given up (dead letter channel) after RETRY_MAX retries
+		from("direct:retryCitizen")
+				.process(restorePerson)
+				.process(scheduleRetry)
+				.choice()
+					.when(header("retry_count").isGreaterThan(RETRY_MAX))
+						.log("    Giving up ${body.lastName} after " + RETRY_MAX + " retries")
+						.to("log:deadPool")
+					.otherwise()
+						.log("    Retrying ${body.lastName} in ${header.AMQ_SCHEDULED_DELAY}ms (retry #${header.retry_count})")
+						.marshal(new BinaryDataFormat())  // Person -> byte[]
+						.to(RETRY_CITIZEN)
+				.end()
+		;
+
+		from(RETRY_CITIZEN)
+				.removeHeader("AMQ_SCHEDULED_DELAY") // consumed by the broker, not to delay the next messages sent
+				.unmarshal(new BinaryDataFormat())  // byte[] -> Person
+				.to("direct:handleACitizen")
 		;
 
 		// bad information about a given citizen
@@ -49,11 +114,91 @@ public class HandleACitizen extends RouteBuilder {
 		;
 
 
-		from("direct:generateLetter")
-				.bean(LetterWriter.class, "write(${property.person}, ${body}, ${property.tax_computation_method})")
-				.to(CSV_OUTPUT_DIRECTORY + "?fileName=${property.p_uuid}.txt")
-		;
+		// Letters appended to segment files (see LetterSink), or written in one file per citizen
+		if ("files".equals(LETTER_SINK)) {
+			from("direct:generateLetter")
+					.process(Metrics.startTimer(LETTER_LATENCY))
+					.bean(LetterWriter.class, "write(${property.person}, ${body}, ${property.tax_computation_method})")
+					.to(CSV_OUTPUT_DIRECTORY + "?fileName=${property.p_uuid}.txt")
+					.process(Metrics.stopTimer(LETTER_LATENCY))
+			;
+		} else {
+			final LetterSink letters = new LetterSink(new File(LETTER_DIRECTORY), LETTER_SEGMENT_SIZE, LETTER_BUFFER_SIZE);
+
+			from("direct:generateLetter")
+					.process(Metrics.startTimer(LETTER_LATENCY))
+					.bean(LetterWriter.class, "write(${property.person}, ${body}, ${property.tax_computation_method})")
+					.bean(letters, "append(${property.p_uuid}, ${body})")
+					.process(Metrics.stopTimer(LETTER_LATENCY))
+			;
+
+			// The buffered letters are written periodically, and the segments closed when the context stops
+			// (once the routes are stopped)
+			from("timer:flushLetters?period=" + LETTER_FLUSH_PERIOD)
+					.bean(letters, "flush")
+			;
+			getContext().addLifecycleStrategy(new LifecycleStrategySupport() {
+				@Override public void onContextStop(CamelContext context) {
+					try {
+						letters.close();
+					} catch (IOException e) {
+						throw new IllegalStateException("Cannot close the letter segments in " + LETTER_DIRECTORY, e);
+					}
+				}
+			});
+		}
 	}
 
+	/**
+	 * Helpers to support the implementation of the route
+	 */
+
+	// Workers running the branches of the multicast: when every worker is busy and the queue is full, the
+	// thread handling the citizen runs the branch by itself instead of queuing more work
+	private ExecutorService buildMulticastWorkers() {
+		ThreadPoolProfile profile = new ThreadPoolProfileBuilder("multicastWorkers")
+				.poolSize(MULTICAST_WORKERS)
+				.maxPoolSize(MULTICAST_WORKERS)
+				.maxQueueSize(MULTICAST_QUEUE_SIZE)
+				.rejectedPolicy(ThreadPoolRejectedPolicy.CallerRuns)
+				.build();
+		return getContext().getExecutorServiceManager().newThreadPool(this, "MulticastWorkers", profile);
+	}
+
+	/**
+	 * Static processors used as helpers to handle the citizens
+	 */
+
+	// Keeps the Person being handled as an exchange property (same instance, no conversion)
+	private static Processor keepPerson = new Processor() {
+		public void process(Exchange exchange) throws Exception {
+			exchange.setProperty("person", exchange.getIn().getBody());
+		}
+	};
+
+	// Puts the Person back in the body, e.g., after calling the generator
+	private static Processor restorePerson = new Processor() {
+		public void process(Exchange exchange) throws Exception {
+			exchange.getIn().setBody(exchange.getProperty("person"));
+		}
+	};
+
+	// The uid of the Person, used as storage key of the tax form once on the JMS channel (properties are lost)
+	private static Processor identifyPerson = new Processor() {
+		public void process(Exchange exchange) throws Exception {
+			exchange.getIn().setHeader("person_uid", exchange.getProperty("person", Person.class).getUid());
+		}
+	};
+
+	// Counts the retries of the citizen (retry_count header), and computes the delay before the next one
+	private static Processor scheduleRetry = new Processor() {
+		public void process(Exchange exchange) throws Exception {
+			Integer previous = exchange.getIn().getHeader("retry_count", Integer.class);
+			int count = (previous == null) ? 1 : previous + 1;
+			long delay = Math.min((long) RETRY_DELAY << Math.min(count - 1, 30), RETRY_MAX_DELAY);
+			exchange.getIn().setHeader("retry_count", count);
+			exchange.getIn().setHeader("AMQ_SCHEDULED_DELAY", delay);
+		}
+	};
 
 }
@@ -2,20 +2,31 @@ package fr.unice.polytech.soa1.cookbook.flows;
 
 
 import static fr.unice.polytech.soa1.cookbook.flows.utils.Endpoints.*;
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.*;
 
 import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.utils.BinaryDataFormat;
+import fr.unice.polytech.soa1.cookbook.flows.utils.CitizenBatch;
+import fr.unice.polytech.soa1.cookbook.flows.utils.LineCounter;
+import fr.unice.polytech.soa1.cookbook.flows.utils.PersonParser;
+import fr.unice.polytech.soa1.cookbook.flows.utils.SampledLog;
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
+import org.apache.camel.ThreadPoolRejectedPolicy;
 import org.apache.camel.builder.RouteBuilder;
-import org.apache.camel.model.dataformat.CsvDataFormat;
+import org.apache.camel.builder.ThreadPoolProfileBuilder;
+import org.apache.camel.spi.ThreadPoolProfile;
 
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Route loading a given CSV file, transforming it into objects and transferring each object to another route
  *
- *   - in ServiceMix, to load the CSV transformation service:
- *     karaf@root> feature:install camel-csv
+ *   - the file is read line by line, and each raw line is parsed into a Person by a column-indexed parser
+ *     (no intermediate CSV record, see PersonParser)
+ *   - lines are handled in parallel by a bounded pool of workers (see Settings), and a summary is logged
+ *     once every line of the file is done and the last batch of citizens is transferred
+ *   - citizens are grouped in batches before being sent to the JMS queue, to avoid one broker round-trip per line
  *
  */
 public class HandleCSVFile extends RouteBuilder {
@@ -25,14 +36,32 @@ public class HandleCSVFile extends RouteBuilder {
 
 		from(CSV_INPUT_DIRECTORY)
 				.log("Processing ${file:name}")
-				.log("  Loading the file as a CSV document")
-				.unmarshal(buildCsvFormat())  // Body is now a List(Map("navn" -> ..., ...), ...)
 				.log("  Splitting the content of the file into atomic lines")
-				.split(body())
-				.log("  Transforming a CSV line into a Person")
-				.process(csv2person)
-				.log("  Transferring to the route that handle a given citizen")
-				.to(HANDLE_CITIZEN)   // Async transfer with JMS ( activemq:... )
+				.split(body().tokenize("\n"), new LineCounter())
+					.streaming()  // lines are read one by one, the file is never loaded as a whole
+					.parallelProcessing().executorService(buildWorkers())
+					.filter(simple("${property.CamelSplitIndex} > 0"))  // skipping the CSV header
+						.process(SampledLog.of(getClass(), "  Transforming a CSV line into a Person"))
+						.process(csv2person)
+						.process(SampledLog.of(getClass(), "  Transferring to the route that handle a given citizen"))
+						.to("direct:publishCitizen")
+					.end()
+				.end() // End of the splitter, every line is done
+				.setHeader(Exchange.AGGREGATION_COMPLETE_ALL_GROUPS, constant(true))
+				.to("direct:publishCitizen")  // flushing the last batch before the summary
+				.removeHeader(Exchange.AGGREGATION_COMPLETE_ALL_GROUPS)
+				.log("Processed ${file:name}: ${property.csv_processed} lines processed, "
+						+ "${property.csv_rejected} rejected, ${property.csv_failed} failed")
+				;
+
+		// Grouping citizens (N per message, or whatever arrived within T ms) before the JMS transfer
+		from("direct:publishCitizen")
+				.aggregate(constant(true), new CitizenBatch())
+					.completionSize(CITIZEN_BATCH_SIZE)
+					.completionTimeout(CITIZEN_BATCH_TIMEOUT)
+					.log("  Transferring a batch of ${body.size} citizens")
+					.marshal(new BinaryDataFormat())  // List<Person> -> byte[]
+					.to(HANDLE_CITIZEN)   // Async transfer with JMS ( activemq:... )
 				;
 
 	}
@@ -41,52 +70,32 @@ public class HandleCSVFile extends RouteBuilder {
 	 * Helpers to support the implementation of the route
 	 */
 
-	// transform a CSV file delimited by commas, skipping the headers and producing a Map as output
-	private static CsvDataFormat buildCsvFormat() {
-		CsvDataFormat format = new CsvDataFormat();
-		format.setDelimiter(",");
-		format.setSkipHeaderRecord(true);
-		format.setUseMaps(true);
-		return format;
+	// Workers handling the lines: when every worker is busy and the queue is full, the file reader
+	// handles the line by itself, bounding the number of lines in flight
+	private ExecutorService buildWorkers() {
+		ThreadPoolProfile profile = new ThreadPoolProfileBuilder("csvWorkers")
+				.poolSize(CSV_WORKERS)
+				.maxPoolSize(CSV_WORKERS)
+				.maxQueueSize(CSV_IN_FLIGHT)
+				.rejectedPolicy(ThreadPoolRejectedPolicy.CallerRuns)
+				.build();
+		return getContext().getExecutorServiceManager().newThreadPool(this, "CsvWorkers", profile);
 	}
 
-
-	// Process a map<String -> Object> into a person
+	// Parse a raw CSV line (String) into a person
 	private static Processor csv2person = new Processor() {
 
+		private final PersonParser parser = new PersonParser();
+
 		public void process(Exchange exchange) throws Exception {
 			// retrieving the body of the exchanged message
-			Map<String, Object> input = (Map<String, Object>) exchange.getIn().getBody();
+			String line = exchange.getIn().getBody(String.class);
 			// transforming the input into a person
-			Person output =  builder(input);
+			Person output = parser.parse(line);
 			// Putting the person inside the body of the message
 			exchange.getIn().setBody(output);
 		}
 
-		private Person builder(Map<String, Object> data) {
-			Person p = new Person();
-			// name
-			String name =  (String) data.get("Navn");
-			p.setFirstName((name.split(",")[1].trim()));
-			p.setLastName((name.split(",")[0].trim()));
-			// zip code
-			p.setZipCode(Integer.parseInt((String) data.get("Postnummer")));
-			// address
-			p.setAddress((String) data.get("Postaddressen"));
-			// email
-			p.setEmail((String) data.get("Epost"));
-			// Unique identifier
-			p.setUid((String) data.get("Fodselsnummer"));
-			// Money
-			p.setIncome(getMoneyValue(data, "Inntekt"));
-			p.setAssets(getMoneyValue(data, "Formue"));
-			return p;
-		}
-
-		private int getMoneyValue(Map<String, Object> data, String field) {
-			String rawIncome = (String) data.get(field);
-			return Integer.parseInt(rawIncome.replace(",", "").substring(0, rawIncome.length() - 3));
-		}
 	};
 
 
@@ -0,0 +1,50 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.metrics.ExchangeMetrics;
+import fr.unice.polytech.soa1.cookbook.flows.metrics.Metrics;
+import fr.unice.polytech.soa1.cookbook.flows.metrics.MetricsView;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.METRICS_LOG_PERIOD;
+
+/**
+ * Route exposing the metrics of the flows (latency histograms and counters, see the metrics package)
+ *
+ *   - every endpoint and every route of the context is measured (see ExchangeMetrics)
+ *   - JMX: fr.unice.polytech.soa1.cookbook.flows:type=Metrics
+ *   - REST: GET /camel/rest/metrics, one line per metric
+ *   - logs: periodic report (Settings.METRICS_LOG_PERIOD)
+ */
+public class MetricsRoute extends RouteBuilder {
+
+	@Override
+	public void configure() throws Exception {
+
+		// applied to the routes created once the builders are configured, i.e., to every route of the context
+		ExchangeMetrics metrics = new ExchangeMetrics();
+		getContext().addInterceptStrategy(metrics);
+		getContext().addRoutePolicyFactory(metrics);
+
+		MetricsView.register();
+
+		rest("/metrics")
+				.get()
+				.to("direct:getMetrics")
+		;
+
+		from("direct:getMetrics")
+				.setHeader(Exchange.CONTENT_TYPE, constant("text/plain"))
+				.setBody(method(Metrics.class, "report"))
+		;
+
+		// Periodic report of the metrics (e.g., latencies of the branches of the multicast in HandleACitizen)
+		if (METRICS_LOG_PERIOD > 0) {
+			from("timer:reportMetrics?period=" + METRICS_LOG_PERIOD)
+					.setBody(method(Metrics.class, "report"))
+					.log("Metrics:${body}")
+			;
+		}
+	}
+
+}
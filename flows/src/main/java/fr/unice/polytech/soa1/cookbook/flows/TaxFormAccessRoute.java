@@ -1,13 +1,33 @@
 package fr.unice.polytech.soa1.cookbook.flows;
 
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.metrics.Metrics;
+import fr.unice.polytech.soa1.cookbook.flows.soap.TaxFormResult;
+import fr.unice.polytech.soa1.cookbook.flows.utils.BinaryDataFormat;
+import fr.unice.polytech.soa1.cookbook.flows.utils.BulkLookup;
 import fr.unice.polytech.soa1.cookbook.flows.utils.Database;
+import fr.unice.polytech.soa1.cookbook.flows.utils.HttpCaching;
+import org.apache.camel.CamelContext;
 import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.support.LifecycleStrategySupport;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static fr.unice.polytech.soa1.cookbook.flows.utils.Endpoints.*;
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.DB_FLUSH_PERIOD;
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.REST_BULK_MAX_SIZE;
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.REST_MAX_AGE;
 
 public class TaxFormAccessRoute extends RouteBuilder {
 
+	// Latency of the storage of a tax form in the database (see Metrics)
+	private static final String DB_STORE_LATENCY = "db.store";
+
 	@Override
 	public void configure() throws Exception {
 
@@ -17,16 +37,40 @@ public class TaxFormAccessRoute extends RouteBuilder {
 		 ****************************************************************/
 
 		// Store a tax form in the database, using an ActiveMQ channel for asynchronous processing
+		from("direct:storeTaxForm")
+				.process(Metrics.startTimer(HandleACitizen.STORE_LATENCY))
+				.marshal(new BinaryDataFormat())  // TaxForm -> byte[]
+				.to(STORE_TAX_FORM)
+				.process(Metrics.stopTimer(HandleACitizen.STORE_LATENCY))
+		;
+
 		from(STORE_TAX_FORM)
-				.bean(Database.class, "setData(${header.person_uid}, ${body})")
+				.unmarshal(new BinaryDataFormat())  // byte[] -> TaxForm
+				.process(Metrics.timed(DB_STORE_LATENCY, storeInDatabase))
 		;
 
+		// The stored tax forms are forced to the disk periodically, and a last time when the context stops
+		// (once the routes are stopped)
+		from("timer:flushTaxForms?period=" + DB_FLUSH_PERIOD)
+				.bean(Database.class, "flush")
+		;
+		getContext().addLifecycleStrategy(new LifecycleStrategySupport() {
+			@Override public void onContextStop(CamelContext context) {
+				new Database().flush();
+			}
+		});
+
 		// Retrieve a taxform in the database, internal route calling the database bean.
 		from("direct:getTaxForm")
 				.bean(Database.class, "getData(${body})") // Body is the UID of the taxpayer
 				.setBody(simple("${body.amount}"))
 		;
 
+		// Retrieve several tax forms in a single pass, unknown UIDs are answered without amount
+		from("direct:getTaxForms")
+				.process(bulkLookup)
+		;
+
 		/***********************************************************
 		 ** Exposing how to retrieve a tax form as a REST service **
 		 ***********************************************************/
@@ -40,11 +84,40 @@ public class TaxFormAccessRoute extends RouteBuilder {
 				.to("direct:getTaxFormFromREST")
 		;
 
-		// local route, collecting URL arguments and transferring it to the concrete route
+		// Bulk lookup: one UID per line in the request, one "uid,amount" line per UID in the (streamed) response
+		rest("/taxForm/_bulk")
+				.post()
+				.to("direct:getTaxFormsFromREST")
+		;
+
+		// local route, collecting URL arguments and looking for the tax form in the (cached) database
+		//   - unknown uid: 404, without going through the error handler
+		//   - known uid: the amount, with an ETag, a Last-Modified date and Cache-Control (304 if the client already
+		//     has this version, see HttpCaching)
 		from("direct:getTaxFormFromREST")
 				.setBody(simple("${header.uid}"))
 				.setHeader(Exchange.CONTENT_TYPE,constant("text/plain"))
-				.to("direct:getTaxForm")
+				.bean(Database.class, "findData(${body})")
+				.choice()
+					.when(body().isNull())
+						.setHeader(Exchange.HTTP_RESPONSE_CODE, constant(404))
+						.setBody(constant(""))
+					.otherwise()
+						.process(httpCaching)
+				.end()
+		;
+
+		// local route, results are computed while the response is written (see BulkLookup)
+		//   - request announcing more than REST_BULK_MAX_SIZE bytes: 413 (a larger chunked request is cut)
+		from("direct:getTaxFormsFromREST")
+				.setHeader(Exchange.CONTENT_TYPE,constant("text/plain"))
+				.choice()
+					.when(header(Exchange.CONTENT_LENGTH).convertTo(Long.class).isGreaterThan(REST_BULK_MAX_SIZE))
+						.setHeader(Exchange.HTTP_RESPONSE_CODE, constant(413))
+						.setBody(constant(""))
+					.otherwise()
+						.process(bulkStream)
+				.end()
 		;
 
 
@@ -54,10 +127,77 @@ public class TaxFormAccessRoute extends RouteBuilder {
 
 
 		from("cxf:/TaxAccessService?serviceClass=fr.unice.polytech.soa1.cookbook.flows.soap.TaxFormAccessService")
-				.filter(simple("${in.headers.operationName} == 'retrieveTaxFormFromUID'"))
-				.to("direct:getTaxForm")
+				.choice()
+					.when(simple("${in.headers.operationName} == 'retrieveTaxFormFromUID'"))
+						.to("direct:getTaxForm")
+					.when(simple("${in.headers.operationName} == 'retrieveTaxFormsFromUIDs'"))
+						.setBody(simple("${body[0]}")) // the list of UIDs, first (and only) parameter
+						.to("direct:getTaxForms")
+				.end()
 		;
 
 	}
 
+	/**
+	 * Static processors used as helpers to expose the tax forms
+	 */
+
+	// Stores the tax form (body) of the citizen identified by the person_uid header
+	private static Processor storeInDatabase = new Processor() {
+
+		private final Database database = new Database();
+
+		public void process(Exchange exchange) throws Exception {
+			String uid = exchange.getIn().getHeader("person_uid", String.class);
+			database.setData(uid, exchange.getIn().getBody(TaxForm.class));
+		}
+	};
+
+	// Looks up each UID of the list in the database, the result list is the single out part of the SOAP answer.
+	// Unlike the REST lookup, this one is not streamed: CXF (POJO mode) unmarshals the whole list of UIDs before
+	// calling the route, and marshals the whole result list after it. Large lookups should use the REST service.
+	private static Processor bulkLookup = new Processor() {
+		public void process(Exchange exchange) throws Exception {
+			List<?> uids = exchange.getIn().getBody(List.class);
+			Database database = new Database();
+			List<TaxFormResult> results = new ArrayList<TaxFormResult>(uids.size());
+			for(Object uid: uids) {
+				TaxForm form = database.findData((String) uid);
+				results.add(new TaxFormResult((String) uid, (form == null) ? null : form.getAmount()));
+			}
+			exchange.getIn().setBody(Collections.singletonList(results));
+		}
+	};
+
+	// Wraps the request body (one UID per line) into a stream producing the results on demand
+	private static Processor bulkStream = new Processor() {
+		public void process(Exchange exchange) throws Exception {
+			InputStream uids = exchange.getIn().getMandatoryBody(InputStream.class);
+			exchange.getIn().setBody(new BulkLookup(uids, new Database(), REST_BULK_MAX_SIZE));
+		}
+	};
+
+	// Answers with the amount of the tax form, or with a 304 if the client already has the current version
+	// (If-None-Match, or If-Modified-Since without If-None-Match, see HttpCaching)
+	private static Processor httpCaching = new Processor() {
+		public void process(Exchange exchange) throws Exception {
+			TaxForm form = exchange.getIn().getBody(TaxForm.class);
+			String etag = HttpCaching.etag(form);
+			exchange.getIn().setHeader("ETag", etag);
+			exchange.getIn().setHeader("Cache-Control", "private, max-age=" + REST_MAX_AGE);
+			if (form.getEpoch() != 0)
+				exchange.getIn().setHeader("Last-Modified", HttpCaching.httpDate(form.getEpoch()));
+			String ifNoneMatch = exchange.getIn().getHeader("If-None-Match", String.class);
+			String ifModifiedSince = exchange.getIn().getHeader("If-Modified-Since", String.class);
+			if (HttpCaching.notModified(ifNoneMatch, ifModifiedSince, etag, form.getEpoch())) {
+				exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 304);
+				exchange.getIn().setBody("");
+			} else {
+				exchange.getIn().setBody(String.valueOf(form.getAmount()));
+			}
+			exchange.getIn().removeHeader("If-None-Match");
+			exchange.getIn().removeHeader("If-Modified-Since");
+		}
+	};
+
 }
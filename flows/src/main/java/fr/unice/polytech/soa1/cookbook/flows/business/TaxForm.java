@@ -7,6 +7,7 @@ public class TaxForm implements Serializable {
 
 	private double amount;
 	private String date;
+	private long epoch; // same date in ms since 1970, 0 if unknown
 
 	public double getAmount() {
 		return amount;
@@ -24,11 +25,20 @@ public class TaxForm implements Serializable {
 		this.date = date;
 	}
 
+	public long getEpoch() {
+		return epoch;
+	}
+
+	public void setEpoch(long epoch) {
+		this.epoch = epoch;
+	}
+
 	@Override
 	public String toString() {
 		return "TaxForm {" +
 				"amount=" + amount +
 				", date='" + date + '\'' +
+				", epoch=" + epoch +
 				'}';
 	}
 }
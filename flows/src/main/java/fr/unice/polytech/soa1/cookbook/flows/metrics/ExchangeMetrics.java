@@ -0,0 +1,203 @@
+package fr.unice.polytech.soa1.cookbook.flows.metrics;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.Route;
+import org.apache.camel.model.ProcessorDefinition;
+import org.apache.camel.model.RouteDefinition;
+import org.apache.camel.model.SendDefinition;
+import org.apache.camel.processor.DelegateAsyncProcessor;
+import org.apache.camel.spi.InterceptStrategy;
+import org.apache.camel.spi.RoutePolicy;
+import org.apache.camel.spi.RoutePolicyFactory;
+import org.apache.camel.support.RoutePolicySupport;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures every endpoint and every consumed route of the Camel context (System.nanoTime()):
+ *
+ *   - endpoint.<uri>: time taken by each exchange sent to the endpoint by a route (.to(...)), i.e., the
+ *     partners (generator, queues) and the direct: routes, until the exchange is done (asynchronous steps
+ *     included). Calls made through producer templates are measured with call(...)
+ *   - route.<uri>: time taken by each exchange consumed from the endpoint (file, queue, REST, ...), until its
+ *     completion. Routes consumed from direct: endpoints are not measured again: their senders measure them
+ *   - the <name>.failures counters count the failed exchanges
+ *
+ * Sends are wrapped by the intercept strategy, and record their latency from a callback reused by the thread:
+ * nothing is allocated, unless the exchange continues asynchronously (one callback per asynchronous send).
+ * Consumed exchanges carry their start time as a property (one Long per consumed exchange). See MetricsTest
+ * for the cost per exchange. The metrics of a given endpoint are looked up by uri, options are not part of
+ * their name (e.g., endpoint.activemq://storeTaxForm).
+ **/
+public class ExchangeMetrics implements InterceptStrategy, RoutePolicyFactory {
+
+	private static final String STARTED = "metrics.started";
+
+	private static final ConcurrentMap<String, Measures> ENDPOINTS = new ConcurrentHashMap<String, Measures>();
+	private static final ConcurrentMap<String, Measures> ROUTES = new ConcurrentHashMap<String, Measures>();
+
+	// callbacks of the sends in progress on the thread, reused once the sends are done
+	private static final ThreadLocal<Timers> TIMERS = new ThreadLocal<Timers>() {
+		@Override protected Timers initialValue() { return new Timers(); }
+	};
+
+	public Processor wrapProcessorInInterceptors(CamelContext context, ProcessorDefinition<?> definition,
+	                                             Processor target, Processor nextTarget) throws Exception {
+		if (!(definition instanceof SendDefinition))
+			return target;
+		SendDefinition<?> send = (SendDefinition<?>) definition;
+		Endpoint endpoint = (send.getEndpoint() != null) ? send.getEndpoint() : context.getEndpoint(send.getUri());
+		return new TimedSend(target, measures(ENDPOINTS, "endpoint.", endpoint));
+	}
+
+	public RoutePolicy createRoutePolicy(CamelContext context, String routeId, RouteDefinition route) {
+		String from = route.getInputs().isEmpty() ? null : route.getInputs().get(0).getUri();
+		if (from == null || from.startsWith("direct:"))
+			return null;
+		return new RoutePolicySupport() {
+			@Override public void onExchangeBegin(Route route, Exchange exchange) {
+				exchange.setProperty(STARTED, System.nanoTime());
+			}
+
+			@Override public void onExchangeDone(Route route, Exchange exchange) {
+				Long started = exchange.getProperty(STARTED, Long.class);
+				if (started != null)
+					measures(ROUTES, "route.", route.getEndpoint())
+							.record(System.nanoTime() - started, exchange.isFailed());
+			}
+		};
+	}
+
+	// a call to the endpoint made outside of the routes (e.g., through a producer template), measured as a send
+	public static <T> T call(CamelContext context, String uri, Callable<T> call) throws Exception {
+		Measures measures = ENDPOINTS.get(uri);
+		if (measures == null)
+			measures = measures(ENDPOINTS, "endpoint.", context.getEndpoint(uri));
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			T result = call.call();
+			success = true;
+			return result;
+		} finally {
+			measures.record(System.nanoTime() - start, !success);
+		}
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private static Measures measures(ConcurrentMap<String, Measures> known, String prefix, Endpoint endpoint) {
+		String uri = endpoint.getEndpointUri();
+		Measures measures = known.get(uri);
+		if (measures == null) {
+			int options = uri.indexOf('?');
+			String name = prefix + ((options < 0) ? uri : uri.substring(0, options));
+			Measures created = new Measures(Metrics.histogram(name), Metrics.counter(name + ".failures"));
+			measures = known.putIfAbsent(uri, created);
+			if (measures == null)
+				measures = created;
+		}
+		return measures;
+	}
+
+	private static final class Measures {
+
+		private final LatencyHistogram latency;
+		private final LongAdder failures;
+
+		Measures(LatencyHistogram latency, LongAdder failures) {
+			this.latency = latency;
+			this.failures = failures;
+		}
+
+		void record(long nanos, boolean failed) {
+			latency.record(nanos);
+			if (failed)
+				failures.increment();
+		}
+	}
+
+	// A send of a route, its latency being recorded when the exchange is done
+	private static final class TimedSend extends DelegateAsyncProcessor {
+
+		private final Measures measures;
+
+		TimedSend(Processor target, Measures measures) {
+			super(target);
+			this.measures = measures;
+		}
+
+		@Override
+		public boolean process(Exchange exchange, AsyncCallback callback) {
+			Timers timers = TIMERS.get();
+			Timer timer = timers.push();
+			timer.start(measures, exchange, callback);
+			boolean sync = false;
+			try {
+				sync = processor.process(exchange, timer);
+				return sync;
+			} finally {
+				timers.pop(!sync); // kept by the asynchronous send (or lost by a failing one): not reused
+			}
+		}
+	}
+
+	// Callback of a send: records its latency, then calls the callback of the send
+	private static final class Timer implements AsyncCallback {
+
+		private Measures measures;
+		private Exchange exchange;
+		private AsyncCallback callback;
+		private long start;
+
+		void start(Measures measures, Exchange exchange, AsyncCallback callback) {
+			this.measures = measures;
+			this.exchange = exchange;
+			this.callback = callback;
+			this.start = System.nanoTime();
+		}
+
+		public void done(boolean doneSync) {
+			measures.record(System.nanoTime() - start, exchange.isFailed());
+			AsyncCallback next = callback;
+			measures = null;
+			exchange = null;
+			callback = null;
+			next.done(doneSync);
+		}
+	}
+
+	// Timers of the nested sends in progress on a thread (e.g., a route sending to a route sending to a queue)
+	private static final class Timers {
+
+		private Timer[] stack = new Timer[8];
+		private int depth = 0;
+
+		Timer push() {
+			if (depth == stack.length)
+				stack = Arrays.copyOf(stack, 2 * depth);
+			Timer timer = stack[depth];
+			if (timer == null)
+				timer = stack[depth] = new Timer();
+			depth++;
+			return timer;
+		}
+
+		void pop(boolean kept) {
+			depth--;
+			if (kept)
+				stack[depth] = null;
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+package fr.unice.polytech.soa1.cookbook.flows.metrics;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics shared by the routes, by name (e.g., "multicast.generateLetter"): latency histograms and counters.
+ * Readable through JMX (see MetricsView) and REST (see MetricsRoute).
+ *
+ *   - timing a processor: .process(Metrics.timed("x", processor)), nothing allocated per exchange
+ *   - timing a part of a route: .process(Metrics.startTimer("x")) ... .process(Metrics.stopTimer("x")), the
+ *     start time being kept by the thread running the part (no boxed Long in the exchange). Both processors
+ *     must run on the same thread, i.e., without asynchronous step in between (e.g., a branch of a multicast)
+ *   - endpoints and routes are measured by an intercept strategy and a route policy (see ExchangeMetrics)
+ *
+ * Metrics are created on first use and live as long as the bundle: holding a reference to one (e.g., in a
+ * processor) avoids any lookup when recording.
+ **/
+public final class Metrics {
+
+	private static final ConcurrentMap<String, LatencyHistogram> HISTOGRAMS =
+			new ConcurrentSkipListMap<String, LatencyHistogram>();
+
+	private static final ConcurrentMap<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<String, LongAdder>();
+
+	// start time of the running timers, by timer name and by thread (0: not started)
+	private static final ConcurrentMap<String, ThreadLocal<long[]>> STARTS =
+			new ConcurrentHashMap<String, ThreadLocal<long[]>>();
+
+	private Metrics() { }
+
+	public static LatencyHistogram histogram(String name) {
+		LatencyHistogram histogram = HISTOGRAMS.get(name);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = HISTOGRAMS.putIfAbsent(name, created);
+			if (histogram == null)
+				histogram = created;
+		}
+		return histogram;
+	}
+
+	public static LongAdder counter(String name) {
+		LongAdder counter = COUNTERS.get(name);
+		if (counter == null) {
+			LongAdder created = new LongAdder();
+			counter = COUNTERS.putIfAbsent(name, created);
+			if (counter == null)
+				counter = created;
+		}
+		return counter;
+	}
+
+	// sorted by name
+	public static Map<String, LatencyHistogram> histograms() {
+		return HISTOGRAMS;
+	}
+
+	// sorted by name
+	public static Map<String, LongAdder> counters() {
+		return COUNTERS;
+	}
+
+	// one line per metric
+	public static String report() {
+		StringBuilder b = new StringBuilder();
+		for(Map.Entry<String, LatencyHistogram> e: HISTOGRAMS.entrySet()) {
+			b.append("\n  ").append(e.getKey()).append(": ").append(e.getValue());
+		}
+		for(Map.Entry<String, LongAdder> e: COUNTERS.entrySet()) {
+			b.append("\n  ").append(e.getKey()).append(": ").append(e.getValue().sum());
+		}
+		return b.toString();
+	}
+
+	// the processor, recording its latency in the histogram and its failures in the <name>.failures counter
+	public static Processor timed(String name, final Processor processor) {
+		final LatencyHistogram histogram = histogram(name);
+		final LongAdder failures = counter(name + ".failures");
+		return new Processor() {
+			public void process(Exchange exchange) throws Exception {
+				long start = System.nanoTime();
+				boolean success = false;
+				try {
+					processor.process(exchange);
+					success = true;
+				} finally {
+					histogram.record(System.nanoTime() - start);
+					if (!success)
+						failures.increment();
+				}
+			}
+		};
+	}
+
+	public static Processor startTimer(String name) {
+		final ThreadLocal<long[]> start = start(name);
+		return new Processor() {
+			public void process(Exchange exchange) throws Exception {
+				start.get()[0] = System.nanoTime();
+			}
+		};
+	}
+
+	public static Processor stopTimer(String name) {
+		final ThreadLocal<long[]> start = start(name);
+		final LatencyHistogram histogram = histogram(name);
+		return new Processor() {
+			public void process(Exchange exchange) throws Exception {
+				long[] started = start.get();
+				if (started[0] != 0) {
+					histogram.record(System.nanoTime() - started[0]);
+					started[0] = 0;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private static ThreadLocal<long[]> start(String name) {
+		ThreadLocal<long[]> start = STARTS.get(name);
+		if (start == null) {
+			ThreadLocal<long[]> created = new ThreadLocal<long[]>() {
+				@Override protected long[] initialValue() { return new long[1]; }
+			};
+			start = STARTS.putIfAbsent(name, created);
+			if (start == null)
+				start = created;
+		}
+		return start;
+	}
+
+}
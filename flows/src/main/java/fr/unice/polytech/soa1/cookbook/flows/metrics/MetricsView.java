@@ -0,0 +1,75 @@
+package fr.unice.polytech.soa1.cookbook.flows.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exposes the metrics in the platform MBean server (e.g., through jconsole).
+ **/
+public final class MetricsView implements MetricsViewMBean {
+
+	public static final String NAME = "fr.unice.polytech.soa1.cookbook.flows:type=Metrics";
+
+	// (re)registers the view, replacing the one of a previous deployment of the bundle
+	public static void register() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(NAME);
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(new MetricsView(), name);
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot register the metrics as " + NAME, e);
+		}
+	}
+
+	public String[] getHistograms() {
+		return Metrics.histograms().keySet().toArray(new String[0]);
+	}
+
+	public String[] getCounters() {
+		return Metrics.counters().keySet().toArray(new String[0]);
+	}
+
+	public String getReport() {
+		return Metrics.report();
+	}
+
+	public long count(String histogram) {
+		return find(histogram).getCount();
+	}
+
+	public double mean(String histogram) {
+		return find(histogram).getMean();
+	}
+
+	public long percentile(String histogram, double fraction) {
+		return find(histogram).percentile(fraction);
+	}
+
+	public long max(String histogram) {
+		return find(histogram).getMax();
+	}
+
+	public long counter(String counter) {
+		LongAdder c = Metrics.counters().get(counter);
+		if (c == null)
+			throw new IllegalArgumentException("Unknown counter: [" + counter + "]");
+		return c.sum();
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private static LatencyHistogram find(String name) {
+		LatencyHistogram h = Metrics.histograms().get(name);
+		if (h == null)
+			throw new IllegalArgumentException("Unknown histogram: [" + name + "]");
+		return h;
+	}
+
+}
@@ -0,0 +1,24 @@
+package fr.unice.polytech.soa1.cookbook.flows.metrics;
+
+/**
+ * JMX view of the metrics (fr.unice.polytech.soa1.cookbook.flows:type=Metrics), latencies in microseconds.
+ **/
+public interface MetricsViewMBean {
+
+	String[] getHistograms();
+
+	String[] getCounters();
+
+	String getReport();
+
+	long count(String histogram);
+
+	double mean(String histogram);
+
+	long percentile(String histogram, double fraction);
+
+	long max(String histogram);
+
+	long counter(String counter);
+
+}
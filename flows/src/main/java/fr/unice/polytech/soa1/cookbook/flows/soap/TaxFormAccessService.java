@@ -4,6 +4,7 @@ import javax.jws.WebMethod;
 import javax.jws.WebParam;
 import javax.jws.WebResult;
 import javax.jws.WebService;
+import java.util.List;
 
 
 @WebService(serviceName = "TaxFormAccessService")
@@ -14,4 +15,9 @@ public interface TaxFormAccessService {
 	@WebResult(name="amount")
 	double getTaxForm(@WebParam(name="request") String request);
 
+	// The UIDs and the results are held in memory (use the REST bulk lookup for large lists)
+	@WebMethod(operationName = "retrieveTaxFormsFromUIDs")
+	@WebResult(name="result")
+	List<TaxFormResult> getTaxForms(@WebParam(name="uid") List<String> uids);
+
 }
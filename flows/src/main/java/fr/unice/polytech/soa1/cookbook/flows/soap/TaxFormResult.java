@@ -0,0 +1,28 @@
+package fr.unice.polytech.soa1.cookbook.flows.soap;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlType;
+
+// Result of a bulk lookup: the amount is absent if the uid is unknown
+@XmlType
+public class TaxFormResult {
+
+	private String uid;
+	private Double amount;
+
+	public TaxFormResult() { }
+
+	public TaxFormResult(String uid, Double amount) {
+		this.uid = uid;
+		this.amount = amount;
+	}
+
+	@XmlElement(required = true)
+	public String getUid() { return uid; }
+	public void setUid(String uid) { this.uid = uid; }
+
+	@XmlElement
+	public Double getAmount() { return amount; }
+	public void setAmount(Double amount) { this.amount = amount; }
+
+}
@@ -0,0 +1,86 @@
+package fr.unice.polytech.soa1.cookbook.flows.storage;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded read-through LRU cache in front of another store.
+ *
+ * Unknown uids are cached too (negative caching), and storing a form replaces the cached entry of its uid.
+ * The cache is split into independent segments (by uid hash) to limit contention between concurrent readers.
+ * A miss is loaded from the backing store without holding its segment, and only cached if no form was stored
+ * in the segment meanwhile (the loaded form might be outdated).
+ **/
+public class CachedTaxFormStore implements TaxFormStore {
+
+	private static final int SEGMENTS = 16;
+	private static final TaxForm UNKNOWN = new TaxForm(); // marker of a cached miss
+
+	private final TaxFormStore store;
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	public CachedTaxFormStore(TaxFormStore store, int capacity) {
+		this.store = store;
+		for(int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(Math.max(1, capacity / SEGMENTS));
+		}
+	}
+
+	public void put(String uid, TaxForm form) {
+		Segment s = segment(uid);
+		synchronized (s) {
+			store.put(uid, form);
+			s.writes++; // a concurrent miss will not cache the previous form of this uid
+			s.put(uid, form);
+		}
+	}
+
+	public TaxForm get(String uid) {
+		Segment s = segment(uid);
+		long writes;
+		synchronized (s) {
+			TaxForm form = s.get(uid);
+			if (form != null)
+				return (form == UNKNOWN) ? null : form;
+			writes = s.writes;
+		}
+		TaxForm form = store.get(uid);
+		synchronized (s) {
+			if (s.writes == writes)
+				s.put(uid, (form == null) ? UNKNOWN : form);
+		}
+		return form;
+	}
+
+	public void flush() {
+		store.flush();
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private Segment segment(String uid) {
+		int h = uid.hashCode();
+		return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+	}
+
+	// LinkedHashMap in access order, evicting the least recently used entry
+	private static class Segment extends LinkedHashMap<String, TaxForm> {
+		private final int capacity;
+		private long writes = 0; // number of forms stored in this segment
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, TaxForm> eldest) {
+			return size() > capacity;
+		}
+	}
+
+}
@@ -0,0 +1,198 @@
+package fr.unice.polytech.soa1.cookbook.flows.storage;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Letters appended to rolling segment files (instead of one file per citizen), through a write buffer.
+ *
+ *   - a record is [uid length (short)][uid (UTF-8)][letter length (int)][letter]
+ *   - a segment is closed when the next record would make it larger than `segmentSize`
+ *   - the index (uid -> segment and offset of the record) is rebuilt at startup by scanning the headers of
+ *     the records. An incomplete record at the end of the last segment (e.g., crash during a write) is truncated
+ *   - the index is kept on the heap: about 175 bytes per letter for a UUID (String, Long and map entry, see
+ *     LetterSinkTest), i.e., about 175MB per million letters
+ *
+ * Appended letters are buffered in memory, and written when the buffer is full, when reading one of them,
+ * when flush() is called (e.g., periodically by a timer route), or when the sink is closed.
+ **/
+public class LetterSink {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String PREFIX = "letters-";
+	private static final String SUFFIX = ".log";
+
+	// bytes read at once when scanning a record: [uid length][uid][letter length] of a UUID, with room to spare
+	private static final int HEADER_SIZE = 256;
+
+	private final File directory;
+	private final long segmentSize;
+	private final ByteBuffer buffer;
+
+	private final ConcurrentMap<String, Long> index = new ConcurrentHashMap<String, Long>();
+	private final List<FileChannel> segments = new ArrayList<FileChannel>();
+
+	// writer state, guarded by this
+	private FileChannel current;
+	private long position = 0; // end of the current segment, buffered bytes included
+
+	public LetterSink(File directory, long segmentSize, int bufferSize) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create directory " + directory);
+		load();
+	}
+
+	public synchronized void append(String uid, byte[] letter) throws IOException {
+		byte[] key = uid.getBytes(UTF_8);
+		int length = 2 + key.length + 4 + letter.length;
+		if (position > 0 && position + length > segmentSize)
+			roll();
+		index.put(uid, address(segments.size() - 1, position));
+		position += length;
+		if (length > buffer.remaining())
+			write();
+		if (length > buffer.capacity()) { // larger than the buffer: written directly
+			ByteBuffer record = ByteBuffer.allocate(length);
+			record.putShort((short) key.length).put(key).putInt(letter.length).put(letter).flip();
+			writeFully(record);
+		} else {
+			buffer.putShort((short) key.length).put(key).putInt(letter.length).put(letter);
+		}
+	}
+
+	// the letter stored for this uid (the latest one), null if unknown
+	public byte[] read(String uid) throws IOException {
+		Long address = index.get(uid);
+		if (address == null)
+			return null;
+		FileChannel segment;
+		synchronized (this) {
+			segment = segments.get((int) (address >>> 40));
+			if (segment == current && buffer.position() > 0)
+				write(); // the letter may still be in the buffer
+		}
+		long offset = address & ((1L << 40) - 1);
+		ByteBuffer header = ByteBuffer.allocate(2);
+		readFully(segment, header, offset);
+		int keyLength = header.getShort(0);
+		ByteBuffer length = ByteBuffer.allocate(4);
+		readFully(segment, length, offset + 2 + keyLength);
+		ByteBuffer letter = ByteBuffer.allocate(length.getInt(0));
+		readFully(segment, letter, offset + 2 + keyLength + 4);
+		return letter.array();
+	}
+
+	public synchronized void flush() throws IOException {
+		write();
+	}
+
+	public synchronized void close() throws IOException {
+		write();
+		for(FileChannel segment: segments) { segment.close(); }
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private static long address(int segment, long offset) {
+		return ((long) segment << 40) | offset;
+	}
+
+	// writes the buffered records at the end of the current segment
+	private void write() throws IOException {
+		buffer.flip();
+		writeFully(buffer);
+		buffer.clear();
+	}
+
+	private void writeFully(ByteBuffer bytes) throws IOException {
+		while (bytes.hasRemaining()) { current.write(bytes); }
+	}
+
+	private static void readFully(FileChannel segment, ByteBuffer target, long offset) throws IOException {
+		while (target.hasRemaining()) {
+			if (segment.read(target, offset + target.position()) < 0)
+				throw new EOFException("Truncated letter in segment at offset " + offset);
+		}
+	}
+
+	private void roll() throws IOException {
+		write();
+		current = open(segmentFile(segments.size()));
+		segments.add(current);
+		position = 0;
+	}
+
+	private File segmentFile(int i) {
+		return new File(directory, String.format("%s%05d%s", PREFIX, i, SUFFIX));
+	}
+
+	private static FileChannel open(File file) throws IOException {
+		return new RandomAccessFile(file, "rw").getChannel();
+	}
+
+	// opens the existing segments and rebuilds the index, the last segment being the one to append to
+	private void load() throws IOException {
+		String[] names = directory.list(new FilenameFilter() {
+			public boolean accept(File dir, String name) { return name.startsWith(PREFIX) && name.endsWith(SUFFIX); }
+		});
+		Arrays.sort(names);
+		if (names.length == 0) {
+			roll();
+			return;
+		}
+		for(int i = 0; i < names.length; i++) {
+			if (!segmentFile(i).getName().equals(names[i]))
+				throw new IOException("Missing segment " + segmentFile(i));
+			current = open(segmentFile(i));
+			segments.add(current);
+			position = scan(i, current);
+		}
+		current.truncate(position);
+		current.position(position);
+	}
+
+	// indexes the letters of a segment, returns the position following the last complete record. Only the
+	// header of each record is read (in one read for the uids up to HEADER_SIZE - 6 bytes), the letters are skipped
+	private long scan(int i, FileChannel segment) throws IOException {
+		long size = segment.size();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		long p = 0;
+		while (p + 2 <= size) {
+			ByteBuffer in = header;
+			in.clear();
+			in.limit((int) Math.min(in.capacity(), size - p));
+			readFully(segment, in, p);
+			int keyLength = in.getShort(0);
+			if (keyLength < 0 || p + 2 + keyLength + 4 > size)
+				break;
+			if (2 + keyLength + 4 > in.limit()) { // long uid: its whole header is read again
+				in = ByteBuffer.allocate(2 + keyLength + 4);
+				readFully(segment, in, p);
+			}
+			int letterLength = in.getInt(2 + keyLength);
+			if (letterLength < 0 || p + 2 + keyLength + 4 + letterLength > size)
+				break;
+			index.put(new String(in.array(), 2, keyLength, UTF_8), address(i, p));
+			p += 2 + keyLength + 4 + letterLength;
+		}
+		return p;
+	}
+
+}
@@ -0,0 +1,270 @@
+package fr.unice.polytech.soa1.cookbook.flows.storage;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.CRC32;
+
+/**
+ * Durable tax form store, made of memory-mapped append-only segment files.
+ *
+ *   - a record is [payload length (int)][CRC32 of the payload (int)][payload], where the payload is
+ *     [uid length (short)][uid (UTF-8)][amount (double)][date length (short), -1 for null][date (UTF-8)]
+ *     [epoch of the date (long)], the epoch being absent from the records written by older versions
+ *   - storing a form appends a record, the latest record of a given uid wins
+ *   - the index (uid -> record address) is an open-addressing table of primitive longs, rebuilt at startup
+ *     by scanning the segments. Forms are only materialized as objects when read
+ *   - a record that is incomplete or corrupted (e.g., crash during a write) marks the end of the log: it is
+ *     erased and the next record is written in its place
+ *
+ * Writes are serialized, reads take no lock: records are written before their address is published in the
+ * index (volatile write), and the index is replaced as a whole when it grows.
+ **/
+public class MappedTaxFormStore implements TaxFormStore {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String PREFIX = "taxforms-";
+	private static final String SUFFIX = ".log";
+	private static final int HEADER = 8; // payload length + CRC32
+
+	private static final float LOAD_FACTOR = 0.75f;
+
+	private final File directory;
+	private final int segmentSize;
+
+	// shared with readers (published through volatile writes)
+	private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+	private volatile AtomicLongArray index;             // record address + 1, 0 for an empty slot
+
+	// writer state
+	private int[] hashes;                                // hash of the uid stored in each slot of the index
+	private int count = 0;
+	private int segment = 0;
+	private int position = 0;
+
+	public MappedTaxFormStore(File directory, int segmentSize, int expectedForms) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedForms / LOAD_FACTOR)) - 1) << 1;
+		this.index = new AtomicLongArray(capacity);
+		this.hashes = new int[capacity];
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create directory " + directory);
+		load();
+	}
+
+	public synchronized void put(String uid, TaxForm form) {
+		byte[] key = uid.getBytes(UTF_8);
+		byte[] date = (form.getDate() == null) ? null : form.getDate().getBytes(UTF_8);
+		int length = 2 + key.length + 8 + 2 + (date == null ? 0 : date.length) + 8;
+		if (HEADER + length > segmentSize)
+			throw new IllegalArgumentException("Tax form too large to be stored for [" + uid + "]");
+
+		ByteBuffer payload = ByteBuffer.allocate(length);
+		payload.putShort((short) key.length).put(key).putDouble(form.getAmount());
+		payload.putShort((short) (date == null ? -1 : date.length));
+		if (date != null)
+			payload.put(date);
+		payload.putLong(form.getEpoch());
+		CRC32 crc = new CRC32();
+		crc.update(payload.array(), 0, length);
+
+		try {
+			if (position + HEADER + length > segments[segment].capacity())
+				roll();
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot create a new segment in " + directory, e);
+		}
+		ByteBuffer out = segments[segment].duplicate();
+		out.position(position);
+		out.putInt(length).putInt((int) crc.getValue()).put(payload.array(), 0, length);
+
+		publish(hash(key), key, address(segment, position));
+		position += HEADER + length;
+	}
+
+	public TaxForm get(String uid) {
+		byte[] key = uid.getBytes(UTF_8);
+		AtomicLongArray table = index;
+		int mask = table.length() - 1;
+		for(int i = hash(key) & mask; ; i = (i + 1) & mask) {
+			long slot = table.get(i);
+			if (slot == 0)
+				return null;
+			if (matches(slot - 1, key))
+				return read(slot - 1);
+		}
+	}
+
+	// forces the mapped segments to the storage device (until then, the forms survive a crash of the
+	// JVM but not of the system)
+	public synchronized void flush() {
+		for(MappedByteBuffer s: segments) { s.force(); }
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private static long address(int segment, int position) {
+		return ((long) segment << 32) | position;
+	}
+
+	private static int hash(byte[] key) {
+		int h = Arrays.hashCode(key);
+		return h ^ (h >>> 16);
+	}
+
+	private boolean matches(long address, byte[] key) {
+		MappedByteBuffer s = segments[(int) (address >>> 32)];
+		int start = (int) address + HEADER;
+		if (s.getShort(start) != key.length)
+			return false;
+		for(int i = 0; i < key.length; i++) {
+			if (s.get(start + 2 + i) != key[i])
+				return false;
+		}
+		return true;
+	}
+
+	private TaxForm read(long address) {
+		MappedByteBuffer s = segments[(int) (address >>> 32)];
+		int end = (int) address + HEADER + s.getInt((int) address);
+		int p = (int) address + HEADER;
+		p += 2 + s.getShort(p);
+		TaxForm form = new TaxForm();
+		form.setAmount(s.getDouble(p));
+		short dateLength = s.getShort(p + 8);
+		p += 10;
+		if (dateLength >= 0) {
+			byte[] date = new byte[dateLength];
+			for(int i = 0; i < dateLength; i++) { date[i] = s.get(p + i); }
+			form.setDate(new String(date, UTF_8));
+			p += dateLength;
+		}
+		if (p + 8 <= end)
+			form.setEpoch(s.getLong(p));
+		return form;
+	}
+
+	// records the address of the latest form of a given uid (writer only)
+	private void publish(int hash, byte[] key, long address) {
+		AtomicLongArray table = index;
+		int mask = table.length() - 1;
+		int i = hash & mask;
+		for(long slot = table.get(i); slot != 0; slot = table.get(i)) {
+			if (hashes[i] == hash && matches(slot - 1, key)) { // replacing an existing form
+				table.set(i, address + 1);
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		hashes[i] = hash;
+		table.set(i, address + 1);
+		if (++count > table.length() * LOAD_FACTOR)
+			grow();
+	}
+
+	// builds a twice larger index, readers keep using the previous one until it is published
+	private void grow() {
+		AtomicLongArray old = index;
+		AtomicLongArray table = new AtomicLongArray(old.length() * 2);
+		int[] newHashes = new int[table.length()];
+		int mask = table.length() - 1;
+		for(int j = 0; j < old.length(); j++) {
+			long slot = old.get(j);
+			if (slot == 0)
+				continue;
+			int i = hashes[j] & mask;
+			while (table.get(i) != 0) { i = (i + 1) & mask; }
+			table.set(i, slot);
+			newHashes[i] = hashes[j];
+		}
+		hashes = newHashes;
+		index = table;
+	}
+
+	private void roll() throws IOException {
+		segment = segments.length;
+		position = 0;
+		MappedByteBuffer[] extended = Arrays.copyOf(segments, segment + 1);
+		extended[segment] = map(segmentFile(segment), true);
+		segments = extended;
+	}
+
+	private File segmentFile(int i) {
+		return new File(directory, String.format("%s%05d%s", PREFIX, i, SUFFIX));
+	}
+
+	private MappedByteBuffer map(File file, boolean fresh) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			if (fresh)
+				raf.setLength(0);
+			long size = Math.max(raf.length(), segmentSize);
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} finally {
+			raf.close(); // the mapping stays valid once the channel is closed
+		}
+	}
+
+	// maps the existing segments and rebuilds the index, the last segment being the one to append to
+	private void load() throws IOException {
+		String[] names = directory.list(new FilenameFilter() {
+			public boolean accept(File dir, String name) { return name.startsWith(PREFIX) && name.endsWith(SUFFIX); }
+		});
+		Arrays.sort(names);
+		if (names.length == 0) {
+			roll();
+			return;
+		}
+		for(int i = 0; i < names.length; i++) {
+			if (!segmentFile(i).getName().equals(names[i]))
+				throw new IOException("Missing segment " + segmentFile(i));
+			MappedByteBuffer[] extended = Arrays.copyOf(segments, i + 1);
+			extended[i] = map(segmentFile(i), false);
+			segments = extended;
+			segment = i;
+			position = scan(i);
+		}
+	}
+
+	// indexes the records of a segment, returns the position following the last valid record
+	private int scan(int i) {
+		MappedByteBuffer s = segments[i];
+		CRC32 crc = new CRC32();
+		int p = 0;
+		while (p + HEADER <= s.capacity()) {
+			int length = s.getInt(p);
+			if (length == 0 && s.getInt(p + 4) == 0)
+				return p; // nothing written after this point
+			if (length < 12 || p + HEADER + length > s.capacity() || !valid(s, p, length, crc))
+				break;
+			int keyLength = s.getShort(p + HEADER);
+			byte[] key = new byte[keyLength];
+			for(int k = 0; k < keyLength; k++) { key[k] = s.get(p + HEADER + 2 + k); }
+			publish(hash(key), key, address(i, p));
+			p += HEADER + length;
+		}
+		// truncated or corrupted record: erasing it (and anything after it), the log continues from here
+		for(int k = p; k < s.capacity(); k++) { s.put(k, (byte) 0); }
+		return p;
+	}
+
+	private static boolean valid(MappedByteBuffer s, int p, int length, CRC32 crc) {
+		crc.reset();
+		for(int k = 0; k < length; k++) { crc.update(s.get(p + HEADER + k)); }
+		return (int) crc.getValue() == s.getInt(p + 4);
+	}
+
+}
@@ -0,0 +1,25 @@
+package fr.unice.polytech.soa1.cookbook.flows.storage;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Local mock for a database: tax forms are kept on the heap, and lost when the bundle is stopped.
+ **/
+public class MemoryTaxFormStore implements TaxFormStore {
+
+	private final ConcurrentMap<String, TaxForm> contents = new ConcurrentHashMap<String, TaxForm>();
+
+	public void put(String uid, TaxForm form) {
+		contents.put(uid, form);
+	}
+
+	public TaxForm get(String uid) {
+		return contents.get(uid);
+	}
+
+	public void flush() { }
+
+}
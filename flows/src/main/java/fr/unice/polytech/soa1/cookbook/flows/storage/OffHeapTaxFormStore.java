@@ -0,0 +1,272 @@
+package fr.unice.polytech.soa1.cookbook.flows.storage;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Tax form store kept outside of the heap, in an open-addressing table of fixed-width slots:
+ *
+ *   [uid, high bits (long)][uid, low bits (long)][amount (double)][epoch (long)][date (int)][unused (int)]
+ *
+ * UIDs must be UUIDs written in upper case (e.g., C79D1004-A72D-1817-20B2-D0F69E787953, the Fodselsnummer
+ * of the CSV files), stored as two longs: put() rejects any other uid (see isUuid), and get() does not know
+ * them. As in the other stores, uids are case-sensitive: the lower-case spelling of a stored UUID is another
+ * uid, unknown to this store (UuidTaxFormStore keeps it in its fallback store).
+ *
+ * Dates are kept exact: the text of a date is appended once, as UTF-8, to a second off-heap area (the
+ * service sends the same text for all the forms computed within a second), and the slot holds its position
+ * in the area (0 for a null date). Only the last DATE_CACHE texts are remembered on the heap to share them
+ * between forms, so the heap kept by the store is bounded whatever the number of distinct dates.
+ * No object is allocated per stored form, and the GC never scans the table nor the dates.
+ *
+ * Writes are serialized, reads are optimistic (no lock unless a write happens during the read).
+ **/
+public class OffHeapTaxFormStore implements TaxFormStore {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int SLOT = 40;
+	private static final int MAX_SLOTS = 1 << 25; // 1.25GB, a direct buffer holds less than 2GB
+	private static final float LOAD_FACTOR = 0.75f;
+	private static final int NO_DATE = 0;         // position of the null date in the date area
+	private static final int DATE_CACHE = 256;    // recent date texts shared on the heap
+
+	private final StampedLock lock = new StampedLock();
+
+	private ByteBuffer table;
+	private int mask;
+	private int count = 0;
+
+	// date texts ([length (short)][UTF-8]), written before being referenced by a slot
+	private ByteBuffer dates = ByteBuffer.allocateDirect(64 * 1024);
+	private int datesEnd = 1; // position 0 stands for the null date
+	private final Map<String, Integer> recentDates = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+		@Override protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+			return size() > DATE_CACHE;
+		}
+	}; // writer only
+
+	// the all-zero UUID cannot be stored in the table (it marks empty slots)
+	private boolean zeroPresent = false;
+	private double zeroAmount;
+	private long zeroEpoch;
+	private int zeroDate;
+
+	public OffHeapTaxFormStore(int expectedForms) {
+		int slots = Integer.highestOneBit(Math.max(16, (int) (expectedForms / LOAD_FACTOR)) - 1) << 1;
+		allocate(Math.min(slots, MAX_SLOTS));
+	}
+
+	public void put(String uid, TaxForm form) {
+		long high = high(uid);
+		long low = low(uid);
+		long stamp = lock.writeLock();
+		try {
+			int date = datePosition(form.getDate());
+			if (high == 0 && low == 0) {
+				zeroPresent = true;
+				zeroAmount = form.getAmount();
+				zeroEpoch = form.getEpoch();
+				zeroDate = date;
+				return;
+			}
+			int slot = find(high, low);
+			if (table.getLong(slot) == 0 && table.getLong(slot + 8) == 0) { // new uid
+				if (count + 1 > (mask + 1) * LOAD_FACTOR) {
+					grow();
+					slot = find(high, low);
+				}
+				count++;
+				table.putLong(slot, high);
+				table.putLong(slot + 8, low);
+			}
+			table.putDouble(slot + 16, form.getAmount());
+			table.putLong(slot + 24, form.getEpoch());
+			table.putInt(slot + 32, date);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	public TaxForm get(String uid) {
+		if (!isUuid(uid))
+			return null;
+		long high = high(uid);
+		long low = low(uid);
+
+		long stamp = lock.tryOptimisticRead();
+		boolean found = false;
+		double amount = 0;
+		long epoch = 0;
+		byte[] date = null;
+		if (stamp != 0) {
+			try {
+				int position;
+				if (high == 0 && low == 0) {
+					found = zeroPresent; amount = zeroAmount; epoch = zeroEpoch; position = zeroDate;
+				} else {
+					ByteBuffer t = table;
+					int slot = find(t, mask, high, low);
+					found = t.getLong(slot) != 0 || t.getLong(slot + 8) != 0;
+					amount = t.getDouble(slot + 16);
+					epoch = t.getLong(slot + 24);
+					position = t.getInt(slot + 32);
+				}
+				date = date(dates, position);
+			} catch (RuntimeException e) { // inconsistent view of a table being replaced (out of bounds, bad length)
+				stamp = 0;
+			}
+		}
+		if (stamp == 0 || !lock.validate(stamp)) { // a write happened during the read
+			stamp = lock.readLock();
+			try {
+				int position;
+				if (high == 0 && low == 0) {
+					found = zeroPresent; amount = zeroAmount; epoch = zeroEpoch; position = zeroDate;
+				} else {
+					int slot = find(high, low);
+					found = table.getLong(slot) != 0 || table.getLong(slot + 8) != 0;
+					amount = table.getDouble(slot + 16);
+					epoch = table.getLong(slot + 24);
+					position = table.getInt(slot + 32);
+				}
+				date = date(dates, position);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		if (!found)
+			return null;
+		TaxForm form = new TaxForm();
+		form.setAmount(amount);
+		form.setDate(date == null ? null : new String(date, UTF_8));
+		form.setEpoch(epoch);
+		return form;
+	}
+
+	// whether a uid can be stored, i.e., it follows the UUID layout (8-4-4-4-12 hexadecimal digits, in upper
+	// case: only one spelling of a uid maps to a given pair of longs)
+	public static boolean isUuid(String uid) {
+		if (uid == null || uid.length() != 36)
+			return false;
+		for(int i = 0; i < 36; i++) {
+			char c = uid.charAt(i);
+			boolean dash = (i == 8 || i == 13 || i == 18 || i == 23);
+			if (dash ? c != '-' : !((c >= '0' && c <= '9') || (c >= 'A' && c <= 'F')))
+				return false;
+		}
+		return true;
+	}
+
+	public void flush() { }
+
+	/**
+	 * Private helpers
+	 */
+
+	private void allocate(int slots) {
+		table = ByteBuffer.allocateDirect(slots * SLOT);
+		mask = slots - 1;
+	}
+
+	// position of the slot holding the uid, or of the empty slot where it would be inserted
+	private int find(long high, long low) {
+		return find(table, mask, high, low);
+	}
+
+	private static int find(ByteBuffer t, int mask, long high, long low) {
+		for(int i = hash(high, low) & mask; ; i = (i + 1) & mask) {
+			int slot = i * SLOT;
+			long h = t.getLong(slot);
+			long l = t.getLong(slot + 8);
+			if ((h == high && l == low) || (h == 0 && l == 0))
+				return slot;
+		}
+	}
+
+	private void grow() {
+		if (mask + 1 >= MAX_SLOTS)
+			throw new IllegalStateException("Off-heap store is full (" + count + " tax forms)");
+		ByteBuffer old = table;
+		allocate((mask + 1) * 2);
+		for(int slot = 0; slot < old.capacity(); slot += SLOT) {
+			long high = old.getLong(slot);
+			long low = old.getLong(slot + 8);
+			if (high == 0 && low == 0)
+				continue;
+			int target = find(high, low);
+			table.putLong(target, high);
+			table.putLong(target + 8, low);
+			table.putDouble(target + 16, old.getDouble(slot + 16));
+			table.putLong(target + 24, old.getLong(slot + 24));
+			table.putInt(target + 32, old.getInt(slot + 32));
+		}
+	}
+
+	private static int hash(long high, long low) {
+		long h = high * 0x9E3779B97F4A7C15L ^ low;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	private static long high(String uid) {
+		if (!isUuid(uid))
+			throw new IllegalArgumentException("Not a UUID: [" + uid + "]");
+		return hex(uid, 0, 8) << 32 | hex(uid, 9, 13) << 16 | hex(uid, 14, 18);
+	}
+
+	private static long low(String uid) {
+		return hex(uid, 19, 23) << 48 | hex(uid, 24, 36);
+	}
+
+	private static long hex(String s, int start, int end) {
+		long result = 0;
+		for(int i = start; i < end; i++) { result = result << 4 | Character.digit(s.charAt(i), 16); }
+		return result;
+	}
+
+	// position of a date in the date area, appended unless it is one of the recent dates (writer only)
+	private int datePosition(String date) {
+		if (date == null)
+			return NO_DATE;
+		Integer position = recentDates.get(date);
+		if (position != null)
+			return position;
+		byte[] text = date.getBytes(UTF_8);
+		if (text.length > Short.MAX_VALUE)
+			throw new IllegalArgumentException("Date too long: " + text.length + " bytes");
+		if (datesEnd + 2 + text.length > dates.capacity()) {
+			long capacity = Math.max(2L * dates.capacity(), datesEnd + 2 + text.length);
+			if (capacity > Integer.MAX_VALUE)
+				throw new IllegalStateException("Off-heap store is full (" + datesEnd + " bytes of dates)");
+			ByteBuffer old = dates.duplicate();
+			old.limit(datesEnd);
+			old.position(0);
+			dates = ByteBuffer.allocateDirect((int) capacity);
+			dates.put(old); // the only relative access: positions are absolute everywhere else
+		}
+		int p = datesEnd;
+		dates.putShort(p, (short) text.length);
+		for(int i = 0; i < text.length; i++) { dates.put(p + 2 + i, text[i]); }
+		datesEnd += 2 + text.length;
+		recentDates.put(date, p);
+		return p;
+	}
+
+	// UTF-8 text of the date at a given position of the date area, null for the null date
+	private static byte[] date(ByteBuffer dates, int position) {
+		if (position == NO_DATE)
+			return null;
+		byte[] text = new byte[dates.getShort(position)];
+		for(int i = 0; i < text.length; i++) { text[i] = dates.get(position + 2 + i); }
+		return text;
+	}
+
+}
@@ -0,0 +1,21 @@
+package fr.unice.polytech.soa1.cookbook.flows.storage;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+
+/**
+ * Storage of the computed tax forms, indexed by the UID of the tax payer.
+ *
+ * Implementations accept concurrent reads while forms are stored.
+ **/
+public interface TaxFormStore {
+
+	// stores (or replaces) the tax form of a given tax payer
+	void put(String uid, TaxForm form);
+
+	// the tax form of a given tax payer, null if unknown
+	TaxForm get(String uid);
+
+	// forces the stored forms to the storage device (nothing to do for the stores kept in memory)
+	void flush();
+
+}
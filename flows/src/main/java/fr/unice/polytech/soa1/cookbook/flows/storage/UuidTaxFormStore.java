@@ -0,0 +1,36 @@
+package fr.unice.polytech.soa1.cookbook.flows.storage;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+
+/**
+ * Tax forms of UUID uids kept in an off-heap store, the forms of any other uid (which the off-heap store
+ * rejects) being kept in a fallback store.
+ **/
+public class UuidTaxFormStore implements TaxFormStore {
+
+	private final OffHeapTaxFormStore uuids;
+	private final TaxFormStore others;
+
+	public UuidTaxFormStore(OffHeapTaxFormStore uuids, TaxFormStore others) {
+		this.uuids = uuids;
+		this.others = others;
+	}
+
+	public void put(String uid, TaxForm form) {
+		if (OffHeapTaxFormStore.isUuid(uid)) {
+			uuids.put(uid, form);
+		} else {
+			others.put(uid, form);
+		}
+	}
+
+	public TaxForm get(String uid) {
+		return OffHeapTaxFormStore.isUuid(uid) ? uuids.get(uid) : others.get(uid);
+	}
+
+	public void flush() {
+		uuids.flush();
+		others.flush();
+	}
+
+}
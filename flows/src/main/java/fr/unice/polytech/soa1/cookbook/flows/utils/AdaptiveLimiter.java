@@ -0,0 +1,62 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+/**
+ * Concurrency limit adapted to the observed latency of a partner (AIMD):
+ *
+ *   - a call answered within the latency target, while the limit is reached, increases the limit by
+ *     1/limit (i.e., by one when a whole limit of calls succeeded)
+ *   - a call failed or slower than the target halves the limit, at most once per observed latency (the
+ *     calls of a same burst do not decrease it several times)
+ *
+ * Callers beyond the limit wait for a call to end: nothing is dropped, the wait is the backpressure.
+ * Only the batch calls of CallExternalPartners go through the limiter (not the unbatched ones, see there).
+ **/
+public class AdaptiveLimiter {
+
+	private static final double BACKOFF = 0.5;
+
+	private final int min;
+	private final int max;
+	private final long latencyTarget;
+
+	private double limit;
+	private int inFlight = 0;
+	private long lastDecrease = 0;
+
+	public AdaptiveLimiter(int initial, int min, int max, long latencyTarget) {
+		this.min = min;
+		this.max = max;
+		this.latencyTarget = latencyTarget;
+		this.limit = Math.max(min, Math.min(max, initial));
+	}
+
+	public synchronized void acquire() throws InterruptedException {
+		while (inFlight >= (int) limit) { wait(); }
+		inFlight++;
+	}
+
+	// latency (ms) of the call that ends, success being false if it failed
+	public synchronized void release(long latency, boolean success) {
+		boolean saturated = inFlight >= (int) limit;
+		inFlight--;
+		long now = System.currentTimeMillis();
+		if (!success || latency > latencyTarget) {
+			if (now - lastDecrease >= latency) {
+				limit = Math.max(min, limit * BACKOFF);
+				lastDecrease = now;
+			}
+		} else if (saturated) {
+			limit = Math.min(max, limit + 1.0 / limit);
+		}
+		notifyAll();
+	}
+
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+}
@@ -0,0 +1,50 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.util.AsyncProcessorHelper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Asynchronous step of a route computing the tax form of a Person (body) through a batcher, the identifier
+ * being the p_uuid property. The exchange is suspended while its batch is on its way to the partner, and
+ * resumed by a thread of the given executor (the callers of the batcher only call the partner).
+ **/
+public class AsyncTaxCall implements AsyncProcessor {
+
+	private final TaxRequestBatcher batcher;
+	private final Executor continuations;
+
+	public AsyncTaxCall(TaxRequestBatcher batcher, Executor continuations) {
+		this.batcher = batcher;
+		this.continuations = continuations;
+	}
+
+	public boolean process(final Exchange exchange, final AsyncCallback callback) {
+		Person p = exchange.getIn().getBody(Person.class);
+		String uuid = exchange.getProperty("p_uuid", String.class);
+		batcher.submit(p, uuid, new TaxRequestBatcher.Callback() {
+			public void done(final TaxForm form, final Exception failure) {
+				continuations.execute(new Runnable() {
+					public void run() {
+						if (failure != null)
+							exchange.setException(failure);
+						else
+							exchange.getIn().setBody(form);
+						callback.done(false);
+					}
+				});
+			}
+		});
+		return false;
+	}
+
+	public void process(Exchange exchange) throws Exception {
+		AsyncProcessorHelper.process(this, exchange);
+	}
+
+}
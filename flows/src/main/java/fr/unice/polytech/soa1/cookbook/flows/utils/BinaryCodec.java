@@ -0,0 +1,123 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written binary encoding of the business objects exchanged through the JMS queues.
+ *
+ * A message starts with a magic byte and a format version, followed by a tagged value:
+ *   - PERSON:   firstName, lastName, zipCode, address, email, uid, income, assets
+ *   - TAX_FORM: amount, date, epoch (no epoch in version 1)
+ *   - LIST:     number of elements, followed by each tagged element
+ * Strings are written as a presence flag followed by their UTF-8 contents (DataOutput.writeUTF).
+ *
+ * Readers reject unknown versions, any change in the layout of a type must bump VERSION. Messages of
+ * the previous versions (e.g., still queued when the flows are upgraded) are read as well.
+ **/
+public final class BinaryCodec {
+
+	public static final byte MAGIC   = (byte) 0xCB;
+	public static final byte VERSION = 2;
+	private static final byte VERSION_WITHOUT_EPOCH = 1; // tax forms read with epoch 0 (unknown)
+
+	private static final byte PERSON   = 1;
+	private static final byte TAX_FORM = 2;
+	private static final byte LIST     = 3;
+
+	private BinaryCodec() { }
+
+	public static void write(DataOutput out, Object value) throws IOException {
+		out.writeByte(MAGIC);
+		out.writeByte(VERSION);
+		writeValue(out, value);
+	}
+
+	public static Object read(DataInput in) throws IOException {
+		byte magic = in.readByte();
+		byte version = in.readByte();
+		if (magic != MAGIC || version < VERSION_WITHOUT_EPOCH || version > VERSION)
+			throw new IOException("Unsupported binary format [magic: " + magic + ", version: " + version + "]");
+		return readValue(in, version);
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private static void writeValue(DataOutput out, Object value) throws IOException {
+		if (value instanceof Person) {
+			out.writeByte(PERSON);
+			Person p = (Person) value;
+			writeString(out, p.getFirstName());
+			writeString(out, p.getLastName());
+			out.writeInt(p.getZipCode());
+			writeString(out, p.getAddress());
+			writeString(out, p.getEmail());
+			writeString(out, p.getUid());
+			out.writeInt(p.getIncome());
+			out.writeInt(p.getAssets());
+		} else if (value instanceof TaxForm) {
+			out.writeByte(TAX_FORM);
+			TaxForm f = (TaxForm) value;
+			out.writeDouble(f.getAmount());
+			writeString(out, f.getDate());
+			out.writeLong(f.getEpoch());
+		} else if (value instanceof List) {
+			out.writeByte(LIST);
+			List<?> elements = (List<?>) value;
+			out.writeInt(elements.size());
+			for(Object e: elements) { writeValue(out, e); }
+		} else {
+			throw new IllegalArgumentException("Cannot encode [" + value + "]");
+		}
+	}
+
+	private static Object readValue(DataInput in, byte version) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+			case PERSON:
+				Person p = new Person();
+				p.setFirstName(readString(in));
+				p.setLastName(readString(in));
+				p.setZipCode(in.readInt());
+				p.setAddress(readString(in));
+				p.setEmail(readString(in));
+				p.setUid(readString(in));
+				p.setIncome(in.readInt());
+				p.setAssets(in.readInt());
+				return p;
+			case TAX_FORM:
+				TaxForm f = new TaxForm();
+				f.setAmount(in.readDouble());
+				f.setDate(readString(in));
+				if (version > VERSION_WITHOUT_EPOCH)
+					f.setEpoch(in.readLong());
+				return f;
+			case LIST:
+				int size = in.readInt();
+				List<Object> elements = new ArrayList<Object>(size);
+				for(int i = 0; i < size; i++) { elements.add(readValue(in, version)); }
+				return elements;
+			default:
+				throw new IOException("Unknown type tag [" + tag + "]");
+		}
+	}
+
+	private static void writeString(DataOutput out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null)
+			out.writeUTF(s);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+}
@@ -0,0 +1,29 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.spi.DataFormat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Camel data format exposing the BinaryCodec, used to marshal business objects before a JMS transfer
+ * (instead of the default java.io serialization).
+ **/
+public class BinaryDataFormat implements DataFormat {
+
+	public void marshal(Exchange exchange, Object graph, OutputStream stream) throws Exception {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+		BinaryCodec.write(out, graph);
+		out.flush();
+	}
+
+	public Object unmarshal(Exchange exchange, InputStream stream) throws Exception {
+		return BinaryCodec.read(new DataInputStream(new BufferedInputStream(stream)));
+	}
+
+}
@@ -0,0 +1,115 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * Streamed bulk lookup: reads uids (one per line) and produces "uid,amount" lines (empty amount for an
+ * unknown uid) as the response is consumed. Neither the requested uids nor the results are kept in memory.
+ *
+ * The request is limited to maxSize bytes: reading past the limit fails with an IOException, which aborts
+ * the response being streamed (requests announcing a larger Content-Length are rejected by the route before).
+ **/
+public class BulkLookup extends InputStream {
+
+	private static final byte[] SEPARATOR = Utf8Buffer.constant(",");
+	private static final byte[] EOL       = Utf8Buffer.constant("\n");
+
+	private final BufferedReader uids;
+	private final Database database;
+	private final Utf8Buffer line = new Utf8Buffer(128);
+	private final byte[] single = new byte[1]; // target of read()
+	private int position = 0;
+
+	public BulkLookup(InputStream uids, Database database, long maxSize) {
+		this.uids = new BufferedReader(new InputStreamReader(new Limited(uids, maxSize), Charset.forName("UTF-8")));
+		this.database = database;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fill())
+			return -1;
+		line.read(position++, single, 0, 1);
+		return single[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] target, int offset, int length) throws IOException {
+		if (length == 0)
+			return 0;
+		if (!fill())
+			return -1;
+		int n = line.read(position, target, offset, length);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		uids.close();
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	// prepares the result line of the next uid when the current one is consumed, false at the end
+	private boolean fill() throws IOException {
+		while (position >= line.size()) {
+			String uid = uids.readLine();
+			if (uid == null)
+				return false;
+			uid = uid.trim();
+			if (uid.length() == 0)
+				continue;
+			TaxForm form = database.findData(uid);
+			line.reset().text(uid).raw(SEPARATOR);
+			if (form != null)
+				line.text(String.valueOf(form.getAmount()));
+			line.raw(EOL);
+			position = 0;
+		}
+		return true;
+	}
+
+	// request stream failing once more than maxSize bytes have been read
+	private static class Limited extends FilterInputStream {
+		private final long maxSize;
+		private long size = 0;
+
+		Limited(InputStream in, long maxSize) {
+			super(in);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				count(1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] target, int offset, int length) throws IOException {
+			int n = super.read(target, offset, length);
+			if (n > 0)
+				count(n);
+			return n;
+		}
+
+		private void count(int n) throws IOException {
+			size += n;
+			if (size > maxSize)
+				throw new IOException("Bulk lookup request larger than " + maxSize + " bytes");
+		}
+	}
+
+}
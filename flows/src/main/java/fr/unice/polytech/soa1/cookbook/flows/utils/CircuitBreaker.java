@@ -0,0 +1,75 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Circuit breaker in front of an external partner:
+ *
+ *   - closed: calls go through, `threshold` consecutive failures open the circuit
+ *   - open: calls fail immediately (no time wasted waiting for a partner known to be down), until
+ *     `openTime` ms are elapsed
+ *   - half-open: a single trial call goes through (the others still fail immediately). Its success closes
+ *     the circuit, its failure opens it again
+ *
+ * Every failure is reported as a PartnerException.
+ **/
+public class CircuitBreaker {
+
+	private enum State { CLOSED, OPEN, HALF_OPEN }
+
+	private final String partner;
+	private final int threshold;
+	private final long openTime;
+
+	private State state = State.CLOSED;
+	private int failures = 0;
+	private long openedAt = 0;
+
+	public CircuitBreaker(String partner, int threshold, long openTime) {
+		this.partner = partner;
+		this.threshold = threshold;
+		this.openTime = openTime;
+	}
+
+	public <T> T call(Callable<T> call) throws PartnerException {
+		before();
+		T result;
+		try {
+			result = call.call();
+		} catch (Exception e) {
+			failure();
+			throw (e instanceof PartnerException) ? (PartnerException) e
+			                                      : new PartnerException("Call to " + partner + " failed", e);
+		}
+		success();
+		return result;
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private synchronized void before() throws PartnerException {
+		if (state == State.CLOSED)
+			return;
+		if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openTime) {
+			state = State.HALF_OPEN; // this call is the trial
+			return;
+		}
+		throw new PartnerException(partner + " is unavailable (circuit open)");
+	}
+
+	private synchronized void success() {
+		state = State.CLOSED;
+		failures = 0;
+	}
+
+	private synchronized void failure() {
+		failures++;
+		if (state == State.HALF_OPEN || failures >= threshold) {
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+		}
+	}
+
+}
@@ -0,0 +1,29 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import org.apache.camel.Exchange;
+import org.apache.camel.processor.aggregate.AggregationStrategy;
+
+import java.util.ArrayList;
+
+/**
+ * Aggregation strategy grouping Persons into a single list, to send many citizens in one JMS message
+ * (the list is then encoded by the BinaryDataFormat).
+ **/
+public class CitizenBatch implements AggregationStrategy {
+
+	@SuppressWarnings("unchecked") // the body of a batch is always the ArrayList<Person> created below
+	public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
+		Person p = newExchange.getIn().getBody(Person.class);
+		if (oldExchange == null) { // first citizen of the batch
+			ArrayList<Person> batch = new ArrayList<Person>(Settings.CITIZEN_BATCH_SIZE);
+			batch.add(p);
+			newExchange.getIn().setBody(batch);
+			return newExchange;
+		}
+		ArrayList<Person> batch = oldExchange.getIn().getBody(ArrayList.class);
+		batch.add(p);
+		return oldExchange;
+	}
+
+}
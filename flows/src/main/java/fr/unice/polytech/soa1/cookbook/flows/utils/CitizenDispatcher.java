@@ -0,0 +1,71 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.Producer;
+import org.apache.camel.util.AsyncProcessorConverterHelper;
+import org.apache.camel.util.ServiceHelper;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends each element of a list (body) to an endpoint in its own exchange, without waiting for an element
+ * to be handled before sending the next one: the target route runs on the calling thread until its first
+ * asynchronous step (e.g., AsyncTaxCall), and is resumed later by another thread.
+ *
+ * At most `ceiling` elements are in flight, all dispatchers sharing this limit: beyond, the calling
+ * thread waits for an element to be done. The processing of the list ends when all its elements are
+ * handled (e.g., a JMS message is only acknowledged once all the citizens it contains are handled).
+ * If they are not all handled within `timeout` ms, the processing fails with a TimeoutException (e.g., the
+ * JMS message is rolled back and redelivered); the elements still in flight keep their slot until done.
+ **/
+public class CitizenDispatcher implements Processor {
+
+	private final Endpoint target;
+	private final Semaphore inFlight;
+	private final long timeout;
+	private AsyncProcessor producer = null;
+
+	public CitizenDispatcher(Endpoint target, int ceiling, long timeout) {
+		this.target = target;
+		this.inFlight = new Semaphore(ceiling);
+		this.timeout = timeout;
+	}
+
+	public void process(Exchange exchange) throws Exception {
+		List<?> elements = exchange.getIn().getMandatoryBody(List.class);
+		final CountDownLatch remaining = new CountDownLatch(elements.size());
+		AsyncProcessor to = producer();
+		for(Object element: elements) {
+			inFlight.acquire();
+			Exchange single = target.createExchange();
+			single.getIn().setBody(element);
+			to.process(single, new AsyncCallback() {
+				public void done(boolean doneSync) {
+					inFlight.release();
+					remaining.countDown();
+				}
+			});
+		}
+		if (!remaining.await(timeout, TimeUnit.MILLISECONDS))
+			throw new TimeoutException(remaining.getCount() + " of " + elements.size() + " elements not handled after " + timeout + "ms");
+	}
+
+	// the producer is created when the first list is received, once the target route is started
+	private synchronized AsyncProcessor producer() throws Exception {
+		if (producer == null) {
+			Producer p = target.createProducer();
+			ServiceHelper.startService(p);
+			producer = AsyncProcessorConverterHelper.convert(p);
+		}
+		return producer;
+	}
+
+}
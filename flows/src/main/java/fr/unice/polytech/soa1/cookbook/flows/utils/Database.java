@@ -1,25 +1,59 @@
 package fr.unice.polytech.soa1.cookbook.flows.utils;
 
 import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.storage.CachedTaxFormStore;
+import fr.unice.polytech.soa1.cookbook.flows.storage.MappedTaxFormStore;
+import fr.unice.polytech.soa1.cookbook.flows.storage.MemoryTaxFormStore;
+import fr.unice.polytech.soa1.cookbook.flows.storage.OffHeapTaxFormStore;
+import fr.unice.polytech.soa1.cookbook.flows.storage.TaxFormStore;
+import fr.unice.polytech.soa1.cookbook.flows.storage.UuidTaxFormStore;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.*;
 
 
 public final class Database {
 
-	// Local mock for a database
-	private static Map<String,TaxForm> contents = new HashMap<String, TaxForm>();
+	// Local database, shared by all the routes (kind of store chosen in Settings.DB_STORE, behind a cache)
+	private static final TaxFormStore contents = cached(open());
 
 	public void setData(String uid, TaxForm f) {
 		contents.put(uid, f);
 	}
 
 	public TaxForm getData(String uuid) {
-		if (contents.containsKey(uuid))
-			return contents.get(uuid);
-		else
+		TaxForm f = contents.get(uuid);
+		if (f == null)
 			throw new IllegalArgumentException("Unknown uuid: [" + uuid + "]");
+		return f;
+	}
+
+	// null if the uid is unknown
+	public TaxForm findData(String uuid) {
+		return contents.get(uuid);
+	}
+
+	// forces the stored tax forms to the disk (mapped store)
+	public void flush() {
+		contents.flush();
+	}
+
+	private static TaxFormStore cached(TaxFormStore store) {
+		return (DB_CACHE_SIZE > 0) ? new CachedTaxFormStore(store, DB_CACHE_SIZE) : store;
+	}
+
+	private static TaxFormStore open() {
+		if ("memory".equals(DB_STORE))
+			return new MemoryTaxFormStore();
+		if ("offheap".equals(DB_STORE)) // uids that are not UUIDs are kept on the heap
+			return new UuidTaxFormStore(new OffHeapTaxFormStore(DB_EXPECTED_FORMS), new MemoryTaxFormStore());
+		try {
+			return new MappedTaxFormStore(new File(DB_DIRECTORY), DB_SEGMENT_SIZE, DB_EXPECTED_FORMS);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot open the tax form store in " + DB_DIRECTORY, e);
+		}
 	}
 
 }
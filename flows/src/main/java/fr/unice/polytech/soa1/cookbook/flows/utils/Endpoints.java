@@ -14,6 +14,8 @@ public class Endpoints {
 
 	public static final String HANDLE_CITIZEN = "activemq:handleACitizen";
 
+	public static final String RETRY_CITIZEN = "activemq:retryCitizen";
+
 	public static final String GEN_SERVICE = "http://localhost:8181";
 
 	public static final String STORE_TAX_FORM = "activemq:storeTaxForm";
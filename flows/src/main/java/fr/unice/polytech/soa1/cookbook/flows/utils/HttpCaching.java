@@ -0,0 +1,110 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Validators of a tax form (ETag, Last-Modified) and evaluation of the conditional headers of a GET request,
+ * as specified by RFC 7232:
+ *
+ *   - If-None-Match is a list of entity tags (e.g., "a", W/"b") or *, compared with the weak comparison
+ *     (W/ is ignored); * matches any current representation
+ *   - If-Modified-Since is only evaluated when If-None-Match is absent, and when the form has a
+ *     Last-Modified date (its epoch). An invalid date is ignored
+ *
+ * Dates are accepted in the three formats of RFC 7231 (IMF-fixdate, RFC 850, asctime).
+ **/
+public final class HttpCaching {
+
+	private static final String[] DATE_FORMATS = { "EEE, dd MMM yyyy HH:mm:ss zzz", "EEEE, dd-MMM-yy HH:mm:ss zzz",
+			"EEE MMM d HH:mm:ss yyyy" };
+
+	// one parser per format and thread (SimpleDateFormat is not thread-safe), the first one formats dates
+	private static final ThreadLocal<DateFormat[]> HTTP_DATES = new ThreadLocal<DateFormat[]>() {
+		@Override protected DateFormat[] initialValue() {
+			DateFormat[] formats = new DateFormat[DATE_FORMATS.length];
+			for(int i = 0; i < formats.length; i++) {
+				formats[i] = new SimpleDateFormat(DATE_FORMATS[i], Locale.US);
+				formats[i].setTimeZone(TimeZone.getTimeZone("GMT"));
+			}
+			return formats;
+		}
+	};
+
+	private HttpCaching() { }
+
+	// strong entity tag of the current version of a tax form
+	public static String etag(TaxForm form) {
+		return "\"" + Long.toHexString(Double.doubleToLongBits(form.getAmount()) * 31 + String.valueOf(form.getDate()).hashCode()) + "\"";
+	}
+
+	// RFC 1123 (IMF-fixdate) text of a date
+	public static String httpDate(long epoch) {
+		return HTTP_DATES.get()[0].format(new Date(epoch));
+	}
+
+	// whether the client already has the current version (answer 304), given the conditional headers (null if absent)
+	public static boolean notModified(String ifNoneMatch, String ifModifiedSince, String etag, long lastModified) {
+		if (ifNoneMatch != null)
+			return matches(ifNoneMatch, etag);
+		if (ifModifiedSince == null || lastModified == 0)
+			return false;
+		long since = parseDate(ifModifiedSince);
+		return since != -1 && lastModified / 1000 <= since / 1000; // HTTP dates have a one-second resolution
+	}
+
+	// whether one of the entity tags of an If-None-Match header matches the given one (weak comparison)
+	public static boolean matches(String ifNoneMatch, String etag) {
+		String header = ifNoneMatch.trim();
+		if ("*".equals(header))
+			return true;
+		String opaque = opaque(etag);
+		int i = 0;
+		while (i < header.length()) {
+			char c = header.charAt(i);
+			if (c == ',' || c == ' ' || c == '\t') {
+				i++;
+				continue;
+			}
+			if (header.startsWith("W/", i))
+				i += 2;
+			if (i >= header.length() || header.charAt(i) != '"')
+				return false; // not a list of entity tags: no match
+			int end = header.indexOf('"', i + 1);
+			if (end < 0)
+				return false;
+			if (header.regionMatches(i, opaque, 0, opaque.length()) && end + 1 - i == opaque.length())
+				return true;
+			i = end + 1;
+		}
+		return false;
+	}
+
+	// epoch of an HTTP date, -1 if it is not valid
+	public static long parseDate(String text) {
+		String date = text.trim();
+		for(DateFormat format: HTTP_DATES.get()) {
+			ParsePosition position = new ParsePosition(0);
+			Date parsed = format.parse(date, position);
+			if (parsed != null && position.getIndex() == date.length())
+				return parsed.getTime();
+		}
+		return -1;
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	// quoted part of an entity tag, without its weakness indicator
+	private static String opaque(String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
+
+}
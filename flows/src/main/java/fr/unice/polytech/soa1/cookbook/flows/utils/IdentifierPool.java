@@ -0,0 +1,77 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Local pool of identifiers prefetched by blocks from the generator service.
+ *
+ * When the number of available identifiers drops below a low-water mark, a single asynchronous refill
+ * asks the source for a new block. Callers only wait when the pool is empty (e.g., at startup, or if
+ * the generator cannot keep up), and fail immediately when the pool is empty after a failed refill. Both
+ * failures are PartnerExceptions: the citizen waiting for an identifier is retried later.
+ **/
+public class IdentifierPool {
+
+	private static final long FAILURE_CHECK = 50; // ms between two checks of the refill outcome while waiting
+
+	private final BlockingQueue<String> available = new LinkedBlockingQueue<String>();
+	private final AtomicBoolean refilling = new AtomicBoolean(false);
+
+	private final int lowWaterMark;
+	private final long timeout;
+	private final Callable<List<String>> source;
+	private final Executor executor;
+
+	private volatile Exception lastFailure = null;
+
+	public IdentifierPool(int lowWaterMark, long timeout, Callable<List<String>> source, Executor executor) {
+		this.lowWaterMark = lowWaterMark;
+		this.timeout = timeout;
+		this.source = source;
+		this.executor = executor;
+	}
+
+	public String take() throws InterruptedException, PartnerException {
+		String id = available.poll();
+		if (id == null) {
+			refill();
+			long deadline = System.currentTimeMillis() + timeout;
+			while (id == null) {
+				if (lastFailure != null) // the source is failing: not waiting for a refill likely to fail
+					throw new PartnerException("No identifier available", lastFailure);
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0)
+					throw new PartnerException("No identifier available after " + timeout + "ms");
+				id = available.poll(Math.min(remaining, FAILURE_CHECK), TimeUnit.MILLISECONDS);
+			}
+		}
+		if (available.size() < lowWaterMark)
+			refill();
+		return id;
+	}
+
+	// at most one refill in progress, failures are kept to explain later timeouts
+	private void refill() {
+		if (!refilling.compareAndSet(false, true))
+			return;
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					available.addAll(source.call());
+					lastFailure = null;
+				} catch (Exception e) {
+					lastFailure = e;
+				} finally {
+					refilling.set(false);
+				}
+			}
+		});
+	}
+
+}
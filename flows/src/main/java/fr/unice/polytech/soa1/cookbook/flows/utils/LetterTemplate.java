@@ -0,0 +1,83 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Letter layout compiled once: the text between the ${field} placeholders is encoded as UTF-8 at compile
+ * time, rendering a letter only appends these constants and the values of the fields to a buffer.
+ *
+ * Fields: firstName, lastName, address, zipCode, uid (from the Person), method (tax computation method),
+ * date, amount (from the TaxForm). Values are printed as a String concatenation would do.
+ **/
+public final class LetterTemplate {
+
+	private static final String[] FIELDS =
+			{ "firstName", "lastName", "address", "zipCode", "uid", "method", "date", "amount" };
+
+	private static final int FIRST_NAME = 0;
+	private static final int LAST_NAME  = 1;
+	private static final int ADDRESS    = 2;
+	private static final int ZIP_CODE   = 3;
+	private static final int UID        = 4;
+	private static final int METHOD     = 5;
+	private static final int DATE       = 6;
+	private static final int AMOUNT     = 7;
+
+	// constants[i] is followed by fields[i], the last constant by nothing
+	private final byte[][] constants;
+	private final int[] fields;
+
+	private LetterTemplate(byte[][] constants, int[] fields) {
+		this.constants = constants;
+		this.fields = fields;
+	}
+
+	public static LetterTemplate compile(String layout) {
+		List<byte[]> constants = new ArrayList<byte[]>();
+		List<Integer> fields = new ArrayList<Integer>();
+		int from = 0;
+		for(int start = layout.indexOf("${"); start >= 0; start = layout.indexOf("${", from)) {
+			int end = layout.indexOf('}', start);
+			if (end < 0)
+				throw new IllegalArgumentException("Unterminated placeholder in letter template at " + start);
+			constants.add(Utf8Buffer.constant(layout.substring(from, start)));
+			fields.add(field(layout.substring(start + 2, end)));
+			from = end + 1;
+		}
+		constants.add(Utf8Buffer.constant(layout.substring(from)));
+		int[] f = new int[fields.size()];
+		for(int i = 0; i < f.length; i++) { f[i] = fields.get(i); }
+		return new LetterTemplate(constants.toArray(new byte[constants.size()][]), f);
+	}
+
+	public void render(Person p, TaxForm form, String method, Utf8Buffer out) {
+		for(int i = 0; i < fields.length; i++) {
+			out.raw(constants[i]);
+			switch (fields[i]) {
+				case FIRST_NAME: out.text(p.getFirstName());                 break;
+				case LAST_NAME:  out.text(p.getLastName());                  break;
+				case ADDRESS:    out.text(p.getAddress());                   break;
+				case ZIP_CODE:   out.number(p.getZipCode());                 break;
+				case UID:        out.text(p.getUid());                       break;
+				case METHOD:     out.text(method);                           break;
+				case DATE:       out.text(form.getDate());                   break;
+				case AMOUNT:     out.text(String.valueOf(form.getAmount())); break;
+				default: throw new IllegalStateException("Unknown field " + fields[i]);
+			}
+		}
+		out.raw(constants[fields.length]);
+	}
+
+	private static int field(String name) {
+		for(int i = 0; i < FIELDS.length; i++) {
+			if (FIELDS[i].equals(name))
+				return i;
+		}
+		throw new IllegalArgumentException("Unknown field in letter template: [" + name + "]");
+	}
+
+}
@@ -4,21 +4,102 @@ package fr.unice.polytech.soa1.cookbook.flows.utils;
 import fr.unice.polytech.soa1.cookbook.flows.business.Person;
 import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.LETTER_LOCALE;
+
+/**
+ * Writes the letter sent to a citizen, as UTF-8 bytes.
+ *
+ * The template depends on the tax computation method and on the locale (Settings.LETTER_LOCALE): the most
+ * specific of the letters/letter_METHOD_locale.txt, letters/letter_METHOD.txt and letters/letter_locale.txt
+ * resources is used (e.g., letters/letter_COMPLEX_fr.txt), the default layout otherwise. Templates are
+ * compiled once (see LetterTemplate).
+ **/
 public class LetterWriter {
 
-	public String write(Person p, TaxForm form, String method) {
-		StringBuilder b = new StringBuilder();
+	private static final String DEFAULT_LAYOUT =
+			"Dear ${firstName} ${lastName}, \n" +
+			"\n" +
+			"  Address: ${address} ${zipCode}\n" +
+			"  ID: ${uid}\n" +
+			"\n\n" +
+			"Taxes computed using the ${method} method on ${date}\n" +
+			"\n\n" +
+			"Amount to pay: ${amount}\n" +
+			"\n";
+
+	private static final LetterTemplate DEFAULT = LetterTemplate.compile(DEFAULT_LAYOUT);
+
+	// templates of the locale of the letters, by tax computation method ("" for an unknown method)
+	private static final ConcurrentMap<String, LetterTemplate> TEMPLATES = new ConcurrentHashMap<String, LetterTemplate>();
+
+	private static final ThreadLocal<Utf8Buffer> BUFFER = new ThreadLocal<Utf8Buffer>() {
+		@Override protected Utf8Buffer initialValue() { return new Utf8Buffer(512); }
+	};
+
+	public byte[] write(Person p, TaxForm form, String method) {
+		Utf8Buffer b = BUFFER.get().reset();
+		render(p, form, method, b);
+		return b.toByteArray();
+	}
+
+	public void render(Person p, TaxForm form, String method, Utf8Buffer out) {
+		template(method).render(p, form, method, out);
+	}
+
+	/**
+	 * Private helpers
+	 */
 
-		b.append("Dear " + p.getFirstName() + " " + p.getLastName() + ", \n");
-		b.append("\n");
-		b.append("  Address: " + p.getAddress() + " " + p.getZipCode() + "\n");
-		b.append("  ID: " + p.getUid() + "\n");
-		b.append("\n\n");
-		b.append("Taxes computed using the " + method + " method on " + form.getDate() + "\n");
-		b.append("\n\n");
-		b.append("Amount to pay: " + form.getAmount() + "\n");
-		b.append("\n");
+	private static LetterTemplate template(String method) {
+		String key = (method == null) ? "" : method; // no null key in a ConcurrentHashMap
+		LetterTemplate template = TEMPLATES.get(key);
+		if (template == null) {
+			template = load(key, LETTER_LOCALE);
+			TEMPLATES.putIfAbsent(key, template);
+		}
+		return template;
+	}
 
-		return b.toString();
+	// the templates of the method are skipped when the method is unknown ("")
+	private static LetterTemplate load(String method, Locale locale) {
+		String[] candidates = {
+				"letter_" + method + "_" + locale.getLanguage() + "_" + locale.getCountry(),
+				"letter_" + method + "_" + locale.getLanguage(),
+				"letter_" + method,
+				"letter_" + locale.getLanguage() + "_" + locale.getCountry(),
+				"letter_" + locale.getLanguage() };
+		for(String name: Arrays.asList(candidates).subList(method.isEmpty() ? 3 : 0, candidates.length)) {
+			String layout = resource("/letters/" + name + ".txt");
+			if (layout != null)
+				return LetterTemplate.compile(layout);
+		}
+		return DEFAULT;
 	}
+
+	private static String resource(String name) {
+		InputStream in = LetterWriter.class.getResourceAsStream(name);
+		if (in == null)
+			return null;
+		try {
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] chunk = new byte[4096];
+				for(int n = in.read(chunk); n >= 0; n = in.read(chunk)) { out.write(chunk, 0, n); }
+				return new String(out.toByteArray(), "UTF-8");
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot read letter template " + name, e);
+		}
+	}
+
 }
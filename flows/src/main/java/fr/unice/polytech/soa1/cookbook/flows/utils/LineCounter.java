@@ -0,0 +1,47 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.processor.aggregate.AggregationStrategy;
+
+/**
+ * Aggregation strategy counting the outcome of each line of a CSV file, whatever the order in which the lines
+ * complete. Counters are stored as exchange properties, available once the splitter is done:
+ *
+ *   - csv_processed: lines transformed and transferred to the citizen handler
+ *   - csv_rejected:  lines that cannot be transformed into a Person (malformed data)
+ *   - csv_failed:    lines that raised any other error
+ *
+ * Failures are counted instead of being propagated, so that one bad line does not fail the whole file.
+ **/
+public class LineCounter implements AggregationStrategy {
+
+	public static final String PROCESSED = "csv_processed";
+	public static final String REJECTED  = "csv_rejected";
+	public static final String FAILED    = "csv_failed";
+
+	public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
+		Exchange result = oldExchange;
+		if (result == null) { // first completed line: initializing the counters
+			result = newExchange;
+			result.setProperty(PROCESSED, 0);
+			result.setProperty(REJECTED, 0);
+			result.setProperty(FAILED, 0);
+		}
+
+		Exception e = newExchange.getException();
+		if (e instanceof IllegalArgumentException) {
+			increment(result, REJECTED);
+		} else if (e != null) {
+			increment(result, FAILED);
+		} else if (newExchange.getProperty(Exchange.FILTER_MATCHED, true, Boolean.class)) { // header is not counted
+			increment(result, PROCESSED);
+		}
+		result.setException(null);
+		return result;
+	}
+
+	private static void increment(Exchange exchange, String counter) {
+		exchange.setProperty(counter, exchange.getProperty(counter, Integer.class) + 1);
+	}
+
+}
@@ -0,0 +1,61 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import fr.unice.polytech.soa1.cookbook.TaxComputationService;
+import fr.unice.polytech.soa1.cookbook.data.AdvancedTaxRequest;
+import fr.unice.polytech.soa1.cookbook.data.SimpleTaxRequest;
+import fr.unice.polytech.soa1.cookbook.data.TaxComputation;
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Calls the tax computation service deployed in the same container (OSGi service), without XML nor HTTP.
+ *
+ * Requests and results are converted exactly as the SOAP path does: the income, assets and zip code are
+ * read by the service as decimal numbers (float for the amounts, text for the zone), and the float amount
+ * is read back from its textual form (e.g., 2469.4 and not 2469.39990234375).
+ **/
+public class LocalTaxComputation {
+
+	private final TaxComputationService service;
+	private final CircuitBreaker breaker;
+
+	public LocalTaxComputation(TaxComputationService service, CircuitBreaker breaker) {
+		this.service = service;
+		this.breaker = breaker;
+	}
+
+	public TaxForm simple(Person p, String uuid) throws PartnerException {
+		final SimpleTaxRequest request = new SimpleTaxRequest();
+		request.setIdentifier(uuid);
+		request.setIncome(p.getIncome());
+		return breaker.call(new Callable<TaxForm>() {
+			public TaxForm call() throws Exception {
+				return toTaxForm(service.simple(request));
+			}
+		});
+	}
+
+	public TaxForm complex(Person p, String uuid) throws PartnerException {
+		final AdvancedTaxRequest request = new AdvancedTaxRequest();
+		request.setIdentifier(uuid);
+		request.setIncome(p.getIncome());
+		request.setAssets(p.getAssets());
+		request.setZone(String.valueOf(p.getZipCode()));
+		return breaker.call(new Callable<TaxForm>() {
+			public TaxForm call() throws Exception {
+				return toTaxForm(service.complex(request));
+			}
+		});
+	}
+
+	private static TaxForm toTaxForm(TaxComputation computation) {
+		TaxForm form = new TaxForm();
+		form.setAmount(Double.parseDouble(Float.toString(computation.getAmount())));
+		form.setDate(computation.getDate());
+		form.setEpoch(computation.getEpoch());
+		return form;
+	}
+
+}
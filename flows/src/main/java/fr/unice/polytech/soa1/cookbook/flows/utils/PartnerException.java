@@ -0,0 +1,17 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+/**
+ * Failure of a call to an external partner (error, timeout, or call not even tried because the partner
+ * is known to be unavailable). The citizen being handled can be retried later.
+ **/
+public class PartnerException extends Exception {
+
+	public PartnerException(String message) {
+		super(message);
+	}
+
+	public PartnerException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
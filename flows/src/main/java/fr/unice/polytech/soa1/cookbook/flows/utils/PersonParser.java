@@ -0,0 +1,134 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+
+/**
+ * Column-indexed parser building a Person straight from a raw CSV line.
+ *
+ * Expected layout (see the datasets directory):
+ *   Navn,Fodselar,Postnummer,Postaddressen,Epost,Fodselsnummer,Inntekt,Formue
+ *
+ * Fields are located by index in the line, numbers (zip code, "11,889Kr" money values) are computed
+ * digit by digit, and the only strings created are the ones stored in the Person. The parser is
+ * stateless, and can be shared by concurrent routes.
+ */
+public final class PersonParser {
+
+	// Columns of the CSV file used to build a Person (1 is the birth year, unused)
+	private static final int NAME     = 0;
+	private static final int ZIP_CODE = 2;
+	private static final int ADDRESS  = 3;
+	private static final int EMAIL    = 4;
+	private static final int UID      = 5;
+	private static final int INCOME   = 6;
+	private static final int ASSETS   = 7;
+
+	public Person parse(String line) {
+		int length = line.length();
+		if (length > 0 && line.charAt(length - 1) == '\r')
+			length--;
+
+		Person p = new Person();
+		int pos = 0;
+		for(int column = NAME; column <= ASSETS; column++) {
+			if (pos > length)
+				throw new IllegalArgumentException("Missing column " + column + " in line [" + line + "]");
+			int start, end;
+			boolean escaped = false;
+			if (pos < length && line.charAt(pos) == '"') { // quoted field, "" stands for a quote
+				start = pos + 1;
+				end = start;
+				while (true) {
+					end = line.indexOf('"', end);
+					if (end < 0 || end >= length)
+						throw new IllegalArgumentException("Unterminated quoted field in line [" + line + "]");
+					if (end + 1 < length && line.charAt(end + 1) == '"') {
+						escaped = true;
+						end += 2;
+					} else { break; }
+				}
+				pos = end + 2; // closing quote + delimiter
+			} else {
+				start = pos;
+				end = line.indexOf(',', pos);
+				if (end < 0 || end > length)
+					end = length;
+				pos = end + 1;
+			}
+			store(p, column, line, start, end, escaped);
+		}
+		return p;
+	}
+
+	private void store(Person p, int column, String line, int start, int end, boolean escaped) {
+		switch (column) {
+			case NAME:
+				int comma = line.indexOf(',', start);
+				if (comma < 0 || comma >= end)
+					throw new IllegalArgumentException("Name is not formatted as [Last, First] in line [" + line + "]");
+				p.setLastName(text(line, start, comma, escaped));
+				p.setFirstName(text(line, comma + 1, end, escaped));
+				break;
+			case ZIP_CODE: p.setZipCode(number(line, start, end));          break;
+			case ADDRESS:  p.setAddress(text(line, start, end, escaped));   break;
+			case EMAIL:    p.setEmail(text(line, start, end, escaped));     break;
+			case UID:      p.setUid(text(line, start, end, escaped));       break;
+			case INCOME:   p.setIncome(money(line, start, end));            break;
+			case ASSETS:   p.setAssets(money(line, start, end));            break;
+			default: // column not used to build a Person
+		}
+	}
+
+	// trimmed contents of [start, end[, unescaping doubled quotes only when the field contains some
+	private static String text(String line, int start, int end, boolean escaped) {
+		while (start < end && line.charAt(start) <= ' ') start++;
+		while (end > start && line.charAt(end - 1) <= ' ') end--;
+		String result = line.substring(start, end);
+		return escaped ? result.replace("\"\"", "\"") : result;
+	}
+
+	// plain integer value, e.g., 69207, accepting what Integer.parseInt accepts (leading sign, no overflow)
+	private static int number(String line, int start, int end) {
+		boolean negative = start < end && line.charAt(start) == '-';
+		if (start < end && (negative || line.charAt(start) == '+'))
+			start++;
+		if (start >= end)
+			throw new NumberFormatException("Empty number in line [" + line + "]");
+		long result = 0;
+		for(int i = start; i < end; i++) {
+			char c = line.charAt(i);
+			if (c < '0' || c > '9')
+				throw new NumberFormatException("Invalid number in line [" + line + "]");
+			result = result * 10 + (c - '0');
+			if (result > Integer.MAX_VALUE + 1L)
+				throw new NumberFormatException("Number out of range in line [" + line + "]");
+		}
+		if (!negative && result > Integer.MAX_VALUE)
+			throw new NumberFormatException("Number out of range in line [" + line + "]");
+		return (int) (negative ? -result : result);
+	}
+
+	// money value with thousands separators and currency, e.g., 11,889Kr or -12,000Kr (int range, as parseInt)
+	private static int money(String line, int start, int end) {
+		boolean negative = start < end && line.charAt(start) == '-';
+		long result = 0;
+		boolean digits = false;
+		for(int i = negative ? start + 1 : start; i < end; i++) {
+			char c = line.charAt(i);
+			if (c >= '0' && c <= '9') {
+				result = result * 10 + (c - '0');
+				digits = true;
+				if (result > Integer.MAX_VALUE + 1L)
+					throw new NumberFormatException("Money value out of range in line [" + line + "]");
+			} else if (c != ',') {
+				break; // currency suffix
+			}
+		}
+		if (!digits)
+			throw new NumberFormatException("Invalid money value in line [" + line + "]");
+		if (!negative && result > Integer.MAX_VALUE)
+			throw new NumberFormatException("Money value out of range in line [" + line + "]");
+		return (int) (negative ? -result : result);
+	}
+
+}
@@ -2,34 +2,101 @@ package fr.unice.polytech.soa1.cookbook.flows.utils;
 
 import fr.unice.polytech.soa1.cookbook.flows.business.Person;
 
+import java.util.List;
+
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Utf8Buffer.constant;
+
 /**
  * This file is part of the system project
  *
  * @author mosser (19/10/2015, 12:28)
+ *
+ * Requests are encoded as UTF-8 bytes in a per-thread reusable buffer: the fixed parts of the XML
+ * documents are encoded once, the identifiers are XML-escaped, and numbers are written digit by digit.
  **/
 public class RequestBuilder {
 
-	public String buildSimpleRequest(Person p, String uuid) {
-		StringBuilder builder = new StringBuilder();
-		builder.append("<cook:simple xmlns:cook=\"http://cookbook.soa1.polytech.unice.fr/\">\n");
-		builder.append("  <simpleTaxInfo>\n");
-		builder.append("    <id>"     + uuid          + "</id>\n");
-		builder.append("    <income>" + p.getIncome() + "</income>\n");
-		builder.append("  </simpleTaxInfo>\n");
-		builder.append("</cook:simple>");
-		return builder.toString();
+	private static final byte[] SIMPLE_START   = constant("<cook:simple xmlns:cook=\"http://cookbook.soa1.polytech.unice.fr/\">\n");
+	private static final byte[] SIMPLE_END     = constant("</cook:simple>");
+	private static final byte[] COMPLEX_START  = constant("<cook:complex xmlns:cook=\"http://cookbook.soa1.polytech.unice.fr/\">\n");
+	private static final byte[] COMPLEX_END    = constant("</cook:complex>");
+	private static final byte[] S_BATCH_START  = constant("<cook:simpleBatch xmlns:cook=\"http://cookbook.soa1.polytech.unice.fr/\">\n");
+	private static final byte[] S_BATCH_END    = constant("</cook:simpleBatch>");
+	private static final byte[] C_BATCH_START  = constant("<cook:complexBatch xmlns:cook=\"http://cookbook.soa1.polytech.unice.fr/\">\n");
+	private static final byte[] C_BATCH_END    = constant("</cook:complexBatch>");
+
+	private static final byte[] SIMPLE_INFO    = constant("  <simpleTaxInfo>\n");
+	private static final byte[] SIMPLE_INFO_END  = constant("  </simpleTaxInfo>\n");
+	private static final byte[] COMPLEX_INFO   = constant("  <complexTaxInfo>\n");
+	private static final byte[] COMPLEX_INFO_END = constant("  </complexTaxInfo>\n");
+	private static final byte[] ID             = constant("    <id>");
+	private static final byte[] ID_END         = constant("</id>\n");
+	private static final byte[] INCOME         = constant("    <income>");
+	private static final byte[] INCOME_END     = constant("</income>\n");
+	private static final byte[] ASSETS         = constant("    <assets>");
+	private static final byte[] ASSETS_END     = constant("</assets>\n");
+	private static final byte[] ZONE           = constant("    <zone>");
+	private static final byte[] ZONE_END       = constant("</zone>\n");
+
+	private static final ThreadLocal<Utf8Buffer> BUFFER = new ThreadLocal<Utf8Buffer>() {
+		@Override protected Utf8Buffer initialValue() { return new Utf8Buffer(1024); }
+	};
+
+	public byte[] buildSimpleRequest(Person p, String uuid) {
+		Utf8Buffer b = BUFFER.get().reset();
+		b.raw(SIMPLE_START);
+		simpleInfo(b, p, uuid);
+		b.raw(SIMPLE_END);
+		return b.toByteArray();
+	}
+
+	public byte[] buildAdvancedRequest(Person p, String uuid) {
+		Utf8Buffer b = BUFFER.get().reset();
+		b.raw(COMPLEX_START);
+		complexInfo(b, p, uuid);
+		b.raw(COMPLEX_END);
+		return b.toByteArray();
+	}
+
+	// Batch requests: persons.get(i) is identified by uuids.get(i)
+
+	public byte[] buildSimpleBatchRequest(List<Person> persons, List<String> uuids) {
+		Utf8Buffer b = BUFFER.get().reset();
+		b.raw(S_BATCH_START);
+		for(int i = 0; i < persons.size(); i++) {
+			simpleInfo(b, persons.get(i), uuids.get(i));
+		}
+		b.raw(S_BATCH_END);
+		return b.toByteArray();
+	}
+
+	public byte[] buildAdvancedBatchRequest(List<Person> persons, List<String> uuids) {
+		Utf8Buffer b = BUFFER.get().reset();
+		b.raw(C_BATCH_START);
+		for(int i = 0; i < persons.size(); i++) {
+			complexInfo(b, persons.get(i), uuids.get(i));
+		}
+		b.raw(C_BATCH_END);
+		return b.toByteArray();
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private static void simpleInfo(Utf8Buffer b, Person p, String uuid) {
+		b.raw(SIMPLE_INFO);
+		b.raw(ID).escaped(uuid).raw(ID_END);
+		b.raw(INCOME).number(p.getIncome()).raw(INCOME_END);
+		b.raw(SIMPLE_INFO_END);
 	}
 
-	public String buildAdvancedRequest(Person p, String uuid) {
-		StringBuilder builder = new StringBuilder();
-		builder.append("<cook:complex xmlns:cook=\"http://cookbook.soa1.polytech.unice.fr/\">\n");
-		builder.append("  <complexTaxInfo>\n");
-		builder.append("    <id>"     + uuid           + "</id>\n");
-		builder.append("    <income>" + p.getIncome()  + "</income>\n");
-		builder.append("    <assets>" + p.getAssets()  + "</assets>\n");
-		builder.append("    <zone>"   + p.getZipCode() + "</zone>\n");
-		builder.append("  </complexTaxInfo>\n");
-		builder.append("</cook:complex>");
-		return builder.toString();
+	private static void complexInfo(Utf8Buffer b, Person p, String uuid) {
+		b.raw(COMPLEX_INFO);
+		b.raw(ID).escaped(uuid).raw(ID_END);
+		b.raw(INCOME).number(p.getIncome()).raw(INCOME_END);
+		b.raw(ASSETS).number(p.getAssets()).raw(ASSETS_END);
+		b.raw(ZONE).number(p.getZipCode()).raw(ZONE_END);
+		b.raw(COMPLEX_INFO_END);
 	}
 }
@@ -0,0 +1,65 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.SimpleBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.LOG_RECORD_RATE;
+
+/**
+ * Log of a per-record step of a route (a CSV line, a citizen), replacing .log(...) on the hot path:
+ * .process(SampledLog.of(getClass(), "Routing ${body.lastName}")).
+ *
+ * Only 1 record (exchange) out of Settings.LOG_RECORD_RATE is logged, none if the rate is 0. The decision is
+ * taken once per exchange, by the first sampled log it reaches, and kept as the log_sampled property: a logged
+ * citizen has all its lines logged, in every route it goes through (the property follows the exchange and its
+ * copies). The message (simple language) is only evaluated for the logged records, and never when the INFO
+ * level is disabled for the route. Per-file and per-batch lines are still logged with .log(...).
+ **/
+public final class SampledLog implements Processor {
+
+	public static final String SAMPLED = "log_sampled";
+
+	// records seen by all the sampled logs, 1 out of `rate` being logged
+	private static final AtomicLong RECORDS = new AtomicLong();
+
+	private final Logger logger;
+	private final Expression message;
+	private final int rate;
+
+	public SampledLog(Logger logger, Expression message, int rate) {
+		this.logger = logger;
+		this.message = message;
+		this.rate = rate;
+	}
+
+	public static SampledLog of(Class<?> route, String message) {
+		return new SampledLog(LoggerFactory.getLogger(route), SimpleBuilder.simple(message), LOG_RECORD_RATE);
+	}
+
+	public void process(Exchange exchange) throws Exception {
+		if (rate <= 0 || !logger.isInfoEnabled())
+			return;
+		if (sampled(exchange))
+			logger.info(message.evaluate(exchange, String.class));
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private boolean sampled(Exchange exchange) {
+		Boolean sampled = exchange.getProperty(SAMPLED, Boolean.class);
+		if (sampled == null) {
+			sampled = rate == 1 || RECORDS.getAndIncrement() % rate == 0;
+			exchange.setProperty(SAMPLED, sampled);
+		}
+		return sampled;
+	}
+
+}
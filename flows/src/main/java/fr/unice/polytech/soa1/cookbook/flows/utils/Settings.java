@@ -0,0 +1,140 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import java.util.Locale;
+
+/**
+ * Tuning parameters of the integration flows.
+ *
+ * Default values can be overridden with JVM system properties (e.g., -Dflows.csv.workers=32), in
+ * ServiceMix through the etc/system.properties file.
+ **/
+public class Settings {
+
+
+	// Number of threads handling the lines of a CSV file in parallel
+	public static final int CSV_WORKERS = Integer.getInteger("flows.csv.workers", Runtime.getRuntime().availableProcessors());
+
+	// Number of lines waiting for a worker before the file reader handles lines by itself (bounds memory)
+	public static final int CSV_IN_FLIGHT = Integer.getInteger("flows.csv.inFlight", 1000);
+
+	// Maximal number of citizens sent in a single JMS message
+	public static final int CITIZEN_BATCH_SIZE = Integer.getInteger("flows.citizen.batchSize", 100);
+
+	// Maximal time (ms) a citizen waits for its batch to be full before being sent anyway
+	public static final int CITIZEN_BATCH_TIMEOUT = Integer.getInteger("flows.citizen.batchTimeout", 200);
+
+	// Number of threads consuming the batches of citizens sent by the CSV handler
+	public static final int CITIZEN_CONSUMERS = Integer.getInteger("flows.citizen.consumers", 10);
+
+	// Maximal number of citizens handled at the same time (waiting for a partner, writing their letter, ...)
+	public static final int CITIZEN_IN_FLIGHT = Integer.getInteger("flows.citizen.inFlight", 1000);
+
+	// Maximal time (ms) to handle the citizens of a JMS message, beyond which the message is redelivered
+	public static final int CITIZEN_TIMEOUT = Integer.getInteger("flows.citizen.timeout", 120000);
+
+	// Number of identifiers asked to the generator service in a single call
+	public static final int ID_BLOCK_SIZE = Integer.getInteger("flows.id.blockSize", 500);
+
+	// Number of locally available identifiers below which a new block is fetched
+	public static final int ID_LOW_WATER_MARK = Integer.getInteger("flows.id.lowWaterMark", 100);
+
+	// Maximal time (ms) spent waiting for an identifier when none is available locally
+	public static final int ID_TIMEOUT = Integer.getInteger("flows.id.timeout", 10000);
+
+	// How the tax computation service is called: "soap" (spring-ws over HTTP) or "local" (direct call to the
+	// OSGi service registered by the ws-soap bundle, deployed in the same container)
+	public static final String TAX_MODE = System.getProperty("flows.tax.mode", "soap");
+
+	// Number of tax computation requests sent in a single SOAP call (1 disables batching)
+	public static final int TAX_BATCH_SIZE = Integer.getInteger("flows.tax.batchSize", 50);
+
+	// Maximal time (ms) a tax computation request waits for its batch to be full before being sent anyway
+	public static final int TAX_BATCH_TIMEOUT = Integer.getInteger("flows.tax.batchTimeout", 100);
+
+	// Number of batches initially sent concurrently to the tax computation service (then adapted to its latency)
+	public static final int TAX_BATCH_CALLERS = Integer.getInteger("flows.tax.batchCallers", 4);
+
+	// Bounds of the number of batches sent concurrently to the tax computation service (unbatched calls are
+	// bounded by the number of threads consuming citizens instead, see CallExternalPartners)
+	public static final int TAX_LIMIT_MIN = Integer.getInteger("flows.tax.limitMin", 1);
+	public static final int TAX_LIMIT_MAX = Integer.getInteger("flows.tax.limitMax", 32);
+
+	// Latency (ms) of a batch call above which the tax computation service is considered as overloaded
+	public static final int TAX_LATENCY_TARGET = Integer.getInteger("flows.tax.latencyTarget", 2000);
+
+	// Number of threads resuming the citizens once the result of their (batched) tax computation is available
+	public static final int TAX_RESULT_WORKERS = Integer.getInteger("flows.tax.resultWorkers", Runtime.getRuntime().availableProcessors());
+
+	// Maximal time (ms) a citizen waits for the result of its tax computation
+	public static final int TAX_CALL_TIMEOUT = Integer.getInteger("flows.tax.callTimeout", 30000);
+
+	// Number of consecutive failures of a partner (generator, tax computation) opening its circuit breaker
+	public static final int BREAKER_FAILURES = Integer.getInteger("flows.breaker.failures", 5);
+
+	// Time (ms) a partner is not called once its circuit is open, before a trial call
+	public static final int BREAKER_OPEN_TIME = Integer.getInteger("flows.breaker.openTime", 5000);
+
+	// Number of times a citizen is retried after a partner failure, before going to the dead letter channel
+	public static final int RETRY_MAX = Integer.getInteger("flows.retry.max", 8);
+
+	// Time (ms) before the first retry of a citizen, doubled at each retry up to RETRY_MAX_DELAY
+	public static final int RETRY_DELAY = Integer.getInteger("flows.retry.delay", 1000);
+	public static final int RETRY_MAX_DELAY = Integer.getInteger("flows.retry.maxDelay", 60000);
+
+	// Threads running the branches of the final multicast of a citizen (letter, storage), and number of
+	// branches waiting for one of them (beyond, the thread handling the citizen runs the branch itself)
+	public static final int MULTICAST_WORKERS = Integer.getInteger("flows.multicast.workers", 2 * Runtime.getRuntime().availableProcessors());
+	public static final int MULTICAST_QUEUE_SIZE = Integer.getInteger("flows.multicast.queueSize", 1000);
+
+	// Per-record route logs (CSV lines, citizens): 1 record out of N is logged (1: every record, 0: none)
+	public static final int LOG_RECORD_RATE = Integer.getInteger("flows.log.recordRate", 1000);
+
+	// Period (ms) of the report of the metrics in the logs (0 disables it)
+	public static final int METRICS_LOG_PERIOD = Integer.getInteger("flows.metrics.logPeriod", 60000);
+
+	// Kind of store used by the Database: "mapped" (durable, memory-mapped files), "offheap" (outside of the
+	// heap for UUID keys, on the heap for the other ones, not durable) or "memory" (heap only)
+	public static final String DB_STORE = System.getProperty("flows.db.store", "mapped");
+
+	// Directory containing the files of the mapped store
+	public static final String DB_DIRECTORY = System.getProperty("flows.db.directory", "camel/db");
+
+	// Size (bytes) of each file of the mapped store
+	public static final int DB_SEGMENT_SIZE = Integer.getInteger("flows.db.segmentSize", 64 * 1024 * 1024);
+
+	// Number of tax forms the index is initially sized for (it grows when needed)
+	public static final int DB_EXPECTED_FORMS = Integer.getInteger("flows.db.expectedForms", 1024 * 1024);
+
+	// Maximal time (ms) between the storage of a tax form and its forcing to the disk (mapped store)
+	public static final int DB_FLUSH_PERIOD = Integer.getInteger("flows.db.flushPeriod", 1000);
+
+	// Number of tax forms (and unknown uids) kept in the cache in front of the store (0 disables the cache)
+	public static final int DB_CACHE_SIZE = Integer.getInteger("flows.db.cacheSize", 100000);
+
+	// How the letters are written: "segments" (appended to rolling files, indexed by uid) or "files" (one file
+	// per citizen, named after its uid)
+	public static final String LETTER_SINK = System.getProperty("flows.letter.sink", "segments");
+
+	// Locale of the letters (language tag, e.g., fr or fr-FR), used to choose their template
+	public static final Locale LETTER_LOCALE = Locale.forLanguageTag(System.getProperty("flows.letter.locale", "en"));
+
+	// Directory containing the segment files of the letters
+	public static final String LETTER_DIRECTORY = System.getProperty("flows.letter.directory", "camel/output/letters");
+
+	// Maximal size (bytes) of a segment file of letters
+	public static final int LETTER_SEGMENT_SIZE = Integer.getInteger("flows.letter.segmentSize", 64 * 1024 * 1024);
+
+	// Size (bytes) of the buffer in which letters are appended before being written
+	public static final int LETTER_BUFFER_SIZE = Integer.getInteger("flows.letter.bufferSize", 256 * 1024);
+
+	// Maximal time (ms) a letter stays in the buffer before being written
+	public static final int LETTER_FLUSH_PERIOD = Integer.getInteger("flows.letter.flushPeriod", 1000);
+
+	// Time (s) REST clients may reuse a tax form without asking for it again
+	public static final int REST_MAX_AGE = Integer.getInteger("flows.rest.maxAge", 60);
+
+	// Maximal size (bytes) of a bulk lookup request (16MB: about 450,000 UUIDs), larger ones are answered with a 413
+	public static final int REST_BULK_MAX_SIZE = Integer.getInteger("flows.rest.bulkMaxSize", 16 * 1024 * 1024);
+
+
+}
@@ -0,0 +1,158 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the TaxComputation results contained in a response of the tax computation service, in a single
+ * forward scan of the document.
+ *
+ * A result is an element named xxx_result (e.g., simple_result) containing an identifier, an amount, a date and
+ * its epoch (absent from the responses of older services).
+ * Streamed responses are read with StAX, DOM responses are walked directly (no re-parsing). The reader holds
+ * no state between calls, and can be shared by concurrent routes.
+ **/
+public class TaxFormReader {
+
+	private static final XMLInputFactory FACTORY = buildFactory();
+
+	// Tax forms contained in the response, indexed by identifier (in document order)
+	public Map<String, TaxForm> readAll(Source response) throws Exception {
+		return read(response, Integer.MAX_VALUE).forms;
+	}
+
+	// Tax form contained in a single-result response, the scan stops as soon as the result is read
+	public TaxForm readOne(Source response) throws Exception {
+		Map<String, TaxForm> forms = read(response, 1).forms;
+		if (forms.isEmpty())
+			throw new IllegalArgumentException("No tax computation result in the response");
+		return forms.values().iterator().next();
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private static Results read(Source response, int limit) throws Exception {
+		Results results = new Results(limit);
+		if (response instanceof StreamSource) {
+			read(open((StreamSource) response), results);
+		} else if (response instanceof DOMSource) {
+			walk(((DOMSource) response).getNode(), results);
+		} else { // any other kind of source is materialized as a DOM
+			DOMResult dom = new DOMResult();
+			transformers().newTransformer().transform(response, dom);
+			walk(dom.getNode(), results);
+		}
+		return results;
+	}
+
+	// Collects the fields of the result being read, and the completed results
+	private static class Results {
+		private final Map<String, TaxForm> forms = new LinkedHashMap<String, TaxForm>();
+		private final int limit;
+		private String identifier;
+		private TaxForm current = new TaxForm();
+
+		Results(int limit) { this.limit = limit; }
+
+		boolean complete() { return forms.size() >= limit; }
+
+		void field(String name, String text) {
+			if ("identifier".equals(name)) { identifier = text; }
+			else if ("amount".equals(name)) { current.setAmount(Double.parseDouble(text)); }
+			else if ("date".equals(name)) { current.setDate(text); }
+			else if ("epoch".equals(name)) { current.setEpoch(Long.parseLong(text)); }
+		}
+
+		void end(String name) {
+			if (name.endsWith("_result")) {
+				forms.put(identifier, current);
+				identifier = null;
+				current = new TaxForm();
+			}
+		}
+	}
+
+	// responses never carry a DTD: DTDs and external entities are not processed (XXE, entity expansion)
+	private static XMLInputFactory buildFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
+
+	// same protection when another kind of source is parsed by the transformer: no external DTD, entity or
+	// stylesheet is fetched, and the secure processing limits (entity expansion) apply
+	private static TransformerFactory transformers() throws TransformerConfigurationException {
+		TransformerFactory factory = TransformerFactory.newInstance();
+		factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+		factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+		factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+		return factory;
+	}
+
+	private static XMLStreamReader open(StreamSource source) throws XMLStreamException {
+		if (source.getInputStream() != null)
+			return FACTORY.createXMLStreamReader(source.getInputStream());
+		return FACTORY.createXMLStreamReader(source.getReader());
+	}
+
+	private static void read(XMLStreamReader reader, Results results) throws XMLStreamException {
+		try {
+			while (!results.complete() && reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					if (isField(name))
+						results.field(name, reader.getElementText().trim());
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					results.end(reader.getLocalName());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static void walk(Node node, Results results) {
+		for(Node child = node.getFirstChild(); child != null && !results.complete(); child = child.getNextSibling()) {
+			if (child.getNodeType() != Node.ELEMENT_NODE)
+				continue;
+			String name = localName((Element) child);
+			if (isField(name)) {
+				results.field(name, child.getTextContent().trim());
+			} else {
+				walk(child, results);
+				results.end(name);
+			}
+		}
+	}
+
+	private static boolean isField(String name) {
+		return "identifier".equals(name) || "amount".equals(name) || "date".equals(name) || "epoch".equals(name);
+	}
+
+	private static String localName(Element e) {
+		if (e.getLocalName() != null)
+			return e.getLocalName();
+		String name = e.getTagName();
+		return name.substring(name.indexOf(':') + 1);
+	}
+
+}
@@ -0,0 +1,160 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Collects the tax computation requests of concurrent callers into batches, sent to the partner when
+ * a batch is full or when its first request has waited long enough. A caller is notified when the result
+ * associated to its own identifier is available: no thread is blocked while the batch is on its way to the partner.
+ *
+ * The result timeout of a batch starts when the partner actually sends it: a batch waiting for the partner
+ * (e.g., for a concurrency slot) is neither expired nor sent after its requests were failed.
+ **/
+public class TaxRequestBatcher {
+
+	// Partner computing a batch of requests, returning the tax forms indexed by identifier. It runs `sending`
+	// right before sending the batch, once it is allowed to (not run if the call fails before)
+	public interface Partner {
+		Map<String, TaxForm> compute(List<Person> persons, List<String> uuids, Runnable sending) throws Exception;
+	}
+
+	// Notified exactly once, with either the tax form or the reason why there is none (a PartnerException
+	// when the partner gave no result for the request, or none in time)
+	public interface Callback {
+		void done(TaxForm form, Exception failure);
+	}
+
+	private final int size;
+	private final long timeout;
+	private final long resultTimeout;
+	private final Partner partner;
+	private final ScheduledExecutorService timer;
+	private final ExecutorService callers;
+
+	private final Object lock = new Object();
+	private List<Pending> current;
+
+	public TaxRequestBatcher(int size, long timeout, long resultTimeout, Partner partner,
+	                         ScheduledExecutorService timer, ExecutorService callers) {
+		this.size = size;
+		this.timeout = timeout;
+		this.resultTimeout = resultTimeout;
+		this.partner = partner;
+		this.timer = timer;
+		this.callers = callers;
+		this.current = new ArrayList<Pending>(size);
+	}
+
+	public void submit(Person p, String uuid, Callback callback) {
+		Pending request = new Pending(p, uuid, callback);
+		List<Pending> full = null;
+		synchronized (lock) {
+			current.add(request);
+			if (current.size() == 1)
+				scheduleFlush(current);
+			if (current.size() >= size) {
+				full = current;
+				current = new ArrayList<Pending>(size);
+			}
+		}
+		if (full != null)
+			send(full);
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	// sends the batch after the timeout, unless it was already sent because full
+	private void scheduleFlush(final List<Pending> batch) {
+		timer.schedule(new Runnable() {
+			public void run() {
+				synchronized (lock) {
+					if (current != batch)
+						return;
+					current = new ArrayList<Pending>(size);
+				}
+				send(batch);
+			}
+		}, timeout, TimeUnit.MILLISECONDS);
+	}
+
+	private void send(final List<Pending> batch) {
+		final AtomicReference<ScheduledFuture<?>> expiry = new AtomicReference<ScheduledFuture<?>>();
+		final Runnable sending = new Runnable() {
+			public void run() { expiry.set(scheduleExpiry(batch)); }
+		};
+		callers.execute(new Runnable() {
+			public void run() {
+				List<Person> persons = new ArrayList<Person>(batch.size());
+				List<String> uuids = new ArrayList<String>(batch.size());
+				for(Pending r: batch) {
+					persons.add(r.person);
+					uuids.add(r.uuid);
+				}
+				try {
+					Map<String, TaxForm> results = partner.compute(persons, uuids, sending);
+					for(Pending r: batch) {
+						TaxForm form = results.get(r.uuid);
+						if (form == null)
+							r.fail(new PartnerException("No tax computation result for [" + r.uuid + "]"));
+						else
+							r.complete(form);
+					}
+				} catch (Exception e) {
+					for(Pending r: batch) { r.fail(e); }
+				} finally {
+					if (expiry.get() != null)
+						expiry.get().cancel(false);
+				}
+			}
+		});
+	}
+
+	// fails the requests of the batch still without result when the result timeout is over
+	private ScheduledFuture<?> scheduleExpiry(final List<Pending> batch) {
+		return timer.schedule(new Runnable() {
+			public void run() {
+				for(Pending r: batch) {
+					r.fail(new PartnerException("No tax computation result for [" + r.uuid + "] after " + resultTimeout + "ms"));
+				}
+			}
+		}, resultTimeout, TimeUnit.MILLISECONDS);
+	}
+
+	// A request waiting for its result, the first outcome (result, failure or expiry) wins
+	private static class Pending {
+		private final Person person;
+		private final String uuid;
+		private final Callback callback;
+		private final AtomicBoolean done = new AtomicBoolean(false);
+
+		Pending(Person person, String uuid, Callback callback) {
+			this.person = person;
+			this.uuid = uuid;
+			this.callback = callback;
+		}
+
+		void complete(TaxForm form) {
+			if (done.compareAndSet(false, true))
+				callback.done(form, null);
+		}
+
+		void fail(Exception e) {
+			if (done.compareAndSet(false, true))
+				callback.done(null, e);
+		}
+	}
+
+}
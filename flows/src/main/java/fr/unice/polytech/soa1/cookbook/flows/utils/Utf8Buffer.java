@@ -0,0 +1,140 @@
+package fr.unice.polytech.soa1.cookbook.flows.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer encoding text directly as UTF-8, without intermediate Strings. Meant to be reused
+ * (reset) by a single thread, e.g., through a ThreadLocal.
+ **/
+public final class Utf8Buffer {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private byte[] data;
+	private int size = 0;
+
+	public Utf8Buffer(int capacity) {
+		this.data = new byte[capacity];
+	}
+
+	// Constant text, encoded once (e.g., the fixed parts of a template)
+	public static byte[] constant(String text) {
+		return text.getBytes(UTF_8);
+	}
+
+	public Utf8Buffer reset() {
+		size = 0;
+		return this;
+	}
+
+	public Utf8Buffer raw(byte[] bytes) {
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, data, size, bytes.length);
+		size += bytes.length;
+		return this;
+	}
+
+	// Text as is ("null" for a null reference, as String concatenation does)
+	public Utf8Buffer text(String s) {
+		return encode(s == null ? "null" : s, false);
+	}
+
+	// Text escaped to be used as the contents of an XML element
+	public Utf8Buffer escaped(String s) {
+		return encode(s == null ? "null" : s, true);
+	}
+
+	public Utf8Buffer number(int value) {
+		if (value == Integer.MIN_VALUE)
+			return text(Integer.toString(value));
+		ensure(11);
+		if (value < 0) {
+			data[size++] = '-';
+			value = -value;
+		}
+		int start = size;
+		do {
+			data[size++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		for(int i = start, j = size - 1; i < j; i++, j--) { // digits were written backward
+			byte tmp = data[i];
+			data[i] = data[j];
+			data[j] = tmp;
+		}
+		return this;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// copies at most length bytes, starting at from, returns the number of bytes copied
+	public int read(int from, byte[] target, int offset, int length) {
+		int n = Math.min(length, size - from);
+		System.arraycopy(data, from, target, offset, n);
+		return n;
+	}
+
+	public byte[] toByteArray() {
+		return Arrays.copyOf(data, size);
+	}
+
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(data, 0, size);
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private Utf8Buffer encode(String s, boolean xml) {
+		int length = s.length();
+		ensure(length);
+		for(int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				if (xml && c == '&')      { raw(AMP); }
+				else if (xml && c == '<') { raw(LT); }
+				else if (xml && c == '>') { raw(GT); }
+				else {
+					ensure(1);
+					data[size++] = (byte) c;
+				}
+			} else if (c < 0x800) {
+				ensure(2);
+				data[size++] = (byte) (0xC0 | (c >> 6));
+				data[size++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				ensure(4);
+				data[size++] = (byte) (0xF0 | (cp >> 18));
+				data[size++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				data[size++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				data[size++] = (byte) (0x80 | (cp & 0x3F));
+			} else if (Character.isSurrogate(c)) { // unpaired surrogate, replaced as String.getBytes does
+				ensure(1);
+				data[size++] = '?';
+			} else {
+				ensure(3);
+				data[size++] = (byte) (0xE0 | (c >> 12));
+				data[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				data[size++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return this;
+	}
+
+	private static final byte[] AMP = constant("&amp;");
+	private static final byte[] LT  = constant("&lt;");
+	private static final byte[] GT  = constant("&gt;");
+
+	private void ensure(int extra) {
+		if (size + extra > data.length)
+			data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+	}
+
+}
@@ -0,0 +1,91 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.utils.AdaptiveLimiter;
+import junit.framework.TestCase;
+import org.junit.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The limiter in front of a stub partner called by 16 threads, whose latency (sleep) rises above the target
+ * of 50ms, then recovers.
+ */
+public class AdaptiveLimiterTest extends TestCase {
+
+	private static final int MIN = 1;
+	private static final int MAX = 8;
+	private static final int TARGET = 50;
+
+	private final AdaptiveLimiter limiter = new AdaptiveLimiter(2, MIN, MAX, TARGET);
+	private ExecutorService callers;
+	private volatile long latency = 5;   // current latency of the partner (ms)
+	private volatile boolean running = true;
+	private volatile String violation = null;
+
+	protected void setUp() {
+		callers = Executors.newFixedThreadPool(17);
+		for(int i = 0; i < 16; i++) { callers.execute(caller); }
+		callers.execute(monitor);
+	}
+
+	protected void tearDown() throws Exception {
+		running = false;
+		callers.shutdown();
+		assertTrue(callers.awaitTermination(1, TimeUnit.MINUTES));
+	}
+
+	// the limit climbs to max while the partner is fast, falls to min when it slows down, and climbs back
+	@Test
+	public void test_convergence() throws Exception {
+		assertTrue("limit " + limiter.getLimit() + " while fast", waitFor(MAX));
+		latency = 2 * TARGET;
+		assertTrue("limit " + limiter.getLimit() + " while slow", waitFor(MIN));
+		latency = 5;
+		assertTrue("limit " + limiter.getLimit() + " once recovered", waitFor(MAX));
+		assertNull(violation, violation);
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	// waits (10s at most) for the limit to reach the given value
+	private boolean waitFor(int limit) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (limiter.getLimit() != limit && System.currentTimeMillis() < deadline) { Thread.sleep(1); }
+		return limiter.getLimit() == limit;
+	}
+
+	// calls the partner in a loop, through the limiter
+	private final Runnable caller = new Runnable() {
+		public void run() {
+			try {
+				while (running) {
+					limiter.acquire();
+					long start = System.currentTimeMillis();
+					Thread.sleep(latency);
+					limiter.release(System.currentTimeMillis() - start, true);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	};
+
+	// checks continuously that the limit stays within [min, max], and that no more than max calls are in flight
+	private final Runnable monitor = new Runnable() {
+		public void run() {
+			while (running) {
+				int limit = limiter.getLimit();
+				int inFlight = limiter.getInFlight();
+				if (limit < MIN || limit > MAX)
+					violation = "limit " + limit + " out of [" + MIN + ", " + MAX + "]";
+				if (inFlight > MAX)
+					violation = inFlight + " calls in flight";
+			}
+		}
+	};
+
+}
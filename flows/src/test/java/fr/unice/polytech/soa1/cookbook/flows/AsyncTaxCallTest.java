@@ -0,0 +1,128 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.utils.AsyncTaxCall;
+import fr.unice.polytech.soa1.cookbook.flows.utils.PartnerException;
+import fr.unice.polytech.soa1.cookbook.flows.utils.TaxRequestBatcher;
+import junit.framework.TestCase;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The asynchronous tax call in front of a batcher (batches of one), the exchange being resumed by a
+ * "continuation" thread.
+ */
+public class AsyncTaxCallTest extends TestCase {
+
+	private DefaultCamelContext context;
+	private ScheduledExecutorService timer;
+	private ExecutorService callers;
+	private ExecutorService continuations;
+
+	protected void setUp() {
+		context = new DefaultCamelContext();
+		timer = Executors.newSingleThreadScheduledExecutor();
+		callers = Executors.newCachedThreadPool();
+		continuations = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) { return new Thread(r, "continuation"); }
+		});
+	}
+
+	protected void tearDown() {
+		timer.shutdownNow();
+		callers.shutdownNow();
+		continuations.shutdownNow();
+	}
+
+	// the tax form becomes the body, the exchange being resumed by a continuation thread
+	@Test
+	public void test_completion() throws Exception {
+		Exchange exchange = call(partner(null, null), 10000);
+		assertNull(exchange.getException());
+		assertEquals(42.0, exchange.getIn().getBody(TaxForm.class).getAmount());
+		assertEquals("continuation", exchange.getProperty("resumedBy"));
+	}
+
+	// a partner failure fails the exchange (retried by HandleACitizen)
+	@Test
+	public void test_failure() throws Exception {
+		Exchange exchange = call(partner(new PartnerException("down"), null), 10000);
+		assertTrue(String.valueOf(exchange.getException()), exchange.getException() instanceof PartnerException);
+		assertTrue(exchange.getIn().getBody() instanceof Person); // body left untouched
+		assertEquals("continuation", exchange.getProperty("resumedBy"));
+	}
+
+	// a partner not answering in time fails the exchange as a partner failure
+	@Test
+	public void test_timeout() throws Exception {
+		CountDownLatch answer = new CountDownLatch(1);
+		try {
+			Exchange exchange = call(partner(null, answer), 100);
+			assertTrue(String.valueOf(exchange.getException()), exchange.getException() instanceof PartnerException);
+			assertEquals("continuation", exchange.getProperty("resumedBy"));
+		} finally {
+			answer.countDown();
+		}
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	// calls AsyncTaxCall for a person of income 42, and waits until the exchange is resumed
+	private Exchange call(TaxRequestBatcher.Partner partner, long resultTimeout) throws Exception {
+		TaxRequestBatcher batcher = new TaxRequestBatcher(1, 10, resultTimeout, partner, timer, callers);
+		Person p = new Person();
+		p.setIncome(42);
+		final Exchange exchange = new DefaultExchange(context);
+		exchange.getIn().setBody(p);
+		exchange.setProperty("p_uuid", "uid-1");
+		final CountDownLatch resumed = new CountDownLatch(1);
+		boolean sync = new AsyncTaxCall(batcher, continuations).process(exchange, new AsyncCallback() {
+			public void done(boolean doneSync) {
+				exchange.setProperty("resumedBy", Thread.currentThread().getName());
+				resumed.countDown();
+			}
+		});
+		assertFalse(sync);
+		assertTrue("exchange not resumed in time", resumed.await(1, TimeUnit.MINUTES));
+		return exchange;
+	}
+
+	// a partner answering an amount equal to the income, or failing, possibly waiting for an answer first
+	private static TaxRequestBatcher.Partner partner(final Exception failure, final CountDownLatch answer) {
+		return new TaxRequestBatcher.Partner() {
+			public Map<String, TaxForm> compute(List<Person> persons, List<String> uuids, Runnable sending)
+					throws Exception {
+				sending.run();
+				if (answer != null)
+					answer.await();
+				if (failure != null)
+					throw failure;
+				Map<String, TaxForm> results = new HashMap<String, TaxForm>();
+				for(int i = 0; i < persons.size(); i++) {
+					TaxForm f = new TaxForm();
+					f.setAmount(persons.get(i).getIncome());
+					results.put(uuids.get(i), f);
+				}
+				return results;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,72 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.utils.BinaryCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding then decoding a batch of citizens (a JMS message body): BinaryCodec against the java.io
+ * serialization used before.
+ *
+ *   mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *       -Dexec.args="-cp %classpath org.openjdk.jmh.Main BinaryCodecBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryCodecBenchmark {
+
+	@Param({ "1", "100" })
+	public int size;
+
+	private ArrayList<Person> batch;
+
+	@Setup
+	public void setUp() {
+		batch = new ArrayList<Person>(size);
+		for(int i = 0; i < size; i++) {
+			Person p = new Person();
+			p.setFirstName("Vernon E.");
+			p.setLastName("Booker" + i);
+			p.setZipCode(69207);
+			p.setAddress("Ap #618-9302 Morbi Av.");
+			p.setEmail("ante@semperNam.net");
+			p.setUid(String.format("C79D1004-A72D-1817-20B2-%012X", i));
+			p.setIncome(11889);
+			p.setAssets(83697);
+			batch.add(p);
+		}
+	}
+
+	@Benchmark
+	public Object binaryCodec() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		BinaryCodec.write(out, batch);
+		out.flush();
+		return BinaryCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+	@Benchmark
+	public Object javaSerialization() throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(batch);
+		out.flush();
+		return new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+	}
+
+}
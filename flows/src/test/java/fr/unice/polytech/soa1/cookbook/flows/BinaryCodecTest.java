@@ -0,0 +1,144 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.utils.BinaryCodec;
+import junit.framework.TestCase;
+import org.junit.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class BinaryCodecTest extends TestCase {
+
+	@Test
+	public void test_person() throws IOException {
+		Person p = (Person) roundTrip(person("Booker", "Vernon \u00c9."));
+		assertEquals("Vernon \u00c9.", p.getFirstName());
+		assertEquals("Booker", p.getLastName());
+		assertEquals(-69207, p.getZipCode());
+		assertEquals("Ap #618-9302 Morbi Av.", p.getAddress());
+		assertEquals("ante@semperNam.net", p.getEmail());
+		assertEquals("C79D1004-A72D-1817-20B2-D0F69E787953", p.getUid());
+		assertEquals(Integer.MAX_VALUE, p.getIncome());
+		assertEquals(Integer.MIN_VALUE, p.getAssets());
+	}
+
+	@Test
+	public void test_null_strings() throws IOException {
+		Person p = (Person) roundTrip(new Person());
+		assertNull(p.getFirstName());
+		assertNull(p.getLastName());
+		assertNull(p.getAddress());
+		assertNull(p.getEmail());
+		assertNull(p.getUid());
+		assertNull(((TaxForm) roundTrip(new TaxForm())).getDate());
+	}
+
+	@Test
+	public void test_tax_form() throws IOException {
+		TaxForm f = (TaxForm) roundTrip(taxForm());
+		assertEquals(2377.8, f.getAmount());
+		assertEquals("Sat Oct 17 23:27:42 UTC 2026", f.getDate());
+		assertEquals(1792279662000L, f.getEpoch());
+	}
+
+	@Test
+	public void test_list() throws IOException {
+		List<?> elements = (List<?>) roundTrip(Arrays.asList(person("A", "a"), taxForm(), Arrays.asList(), person("B", "b")));
+		assertEquals(4, elements.size());
+		assertEquals("A", ((Person) elements.get(0)).getLastName());
+		assertEquals(2377.8, ((TaxForm) elements.get(1)).getAmount());
+		assertEquals(0, ((List<?>) elements.get(2)).size());
+		assertEquals("B", ((Person) elements.get(3)).getLastName());
+	}
+
+	@Test
+	public void test_version_check() throws IOException {
+		byte[] bytes = encode(person("Booker", "Vernon E."));
+		assertEquals(BinaryCodec.MAGIC, bytes[0]);
+		assertEquals(BinaryCodec.VERSION, bytes[1]);
+		for(byte version: new byte[] { 0, BinaryCodec.VERSION + 1 }) {
+			bytes[1] = version;
+			assertUnsupported(bytes);
+		}
+		bytes[1] = BinaryCodec.VERSION;
+		bytes[0] = 0;
+		assertUnsupported(bytes);
+	}
+
+	// messages queued before the epoch was added to the tax forms
+	@Test
+	public void test_version_1() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(BinaryCodec.MAGIC);
+		out.writeByte(1);
+		out.writeByte(3); // list of one tax form
+		out.writeInt(1);
+		out.writeByte(2);
+		out.writeDouble(2377.8);
+		out.writeBoolean(true);
+		out.writeUTF("Sat Oct 17 23:27:42 UTC 2026");
+		out.flush();
+		TaxForm f = (TaxForm) ((List<?>) decode(bytes.toByteArray())).get(0);
+		assertEquals(2377.8, f.getAmount());
+		assertEquals("Sat Oct 17 23:27:42 UTC 2026", f.getDate());
+		assertEquals(0, f.getEpoch());
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private static Object roundTrip(Object value) throws IOException {
+		return decode(encode(value));
+	}
+
+	private static byte[] encode(Object value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		BinaryCodec.write(out, value);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static Object decode(byte[] bytes) throws IOException {
+		return BinaryCodec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	private static void assertUnsupported(byte[] bytes) {
+		try {
+			decode(bytes);
+			fail("format [magic: " + bytes[0] + ", version: " + bytes[1] + "] accepted");
+		} catch (IOException e) { /* expected */ }
+	}
+
+	private static Person person(String lastName, String firstName) {
+		Person p = new Person();
+		p.setFirstName(firstName);
+		p.setLastName(lastName);
+		p.setZipCode(-69207);
+		p.setAddress("Ap #618-9302 Morbi Av.");
+		p.setEmail("ante@semperNam.net");
+		p.setUid("C79D1004-A72D-1817-20B2-D0F69E787953");
+		p.setIncome(Integer.MAX_VALUE);
+		p.setAssets(Integer.MIN_VALUE);
+		return p;
+	}
+
+	private static TaxForm taxForm() {
+		TaxForm f = new TaxForm();
+		f.setAmount(2377.8);
+		f.setDate("Sat Oct 17 23:27:42 UTC 2026");
+		f.setEpoch(1792279662000L);
+		return f;
+	}
+
+}
@@ -0,0 +1,79 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.storage.CachedTaxFormStore;
+import fr.unice.polytech.soa1.cookbook.flows.storage.MemoryTaxFormStore;
+import junit.framework.TestCase;
+import org.junit.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+
+public class CachedTaxFormStoreTest extends TestCase {
+
+	@Test
+	public void test_read_through() {
+		MemoryTaxFormStore backing = new MemoryTaxFormStore();
+		backing.put("uid-1", form(1));
+		CachedTaxFormStore store = new CachedTaxFormStore(backing, 64);
+		assertEquals(1.0, store.get("uid-1").getAmount());
+		assertNull(store.get("uid-2"));
+		backing.put("uid-1", form(10)); // behind the cache
+		backing.put("uid-2", form(2));
+		assertEquals(1.0, store.get("uid-1").getAmount());
+		assertNull(store.get("uid-2"));   // negative caching
+		store.put("uid-2", form(20));
+		assertEquals(20.0, store.get("uid-2").getAmount());
+		assertEquals(20.0, backing.get("uid-2").getAmount());
+	}
+
+	// a slow miss does not block its segment, and a form stored during the miss is not overwritten by the loaded one
+	@Test
+	public void test_miss_outside_lock() throws Exception {
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch loaded = new CountDownLatch(1);
+		MemoryTaxFormStore backing = new MemoryTaxFormStore() {
+			@Override
+			public TaxForm get(String uid) {
+				TaxForm form = super.get(uid);
+				loading.countDown();
+				try {
+					loaded.await(1, TimeUnit.MINUTES);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return form;
+			}
+		};
+		backing.put("uid-1", form(1));
+		final CachedTaxFormStore store = new CachedTaxFormStore(backing, 64);
+		ExecutorService reader = Executors.newSingleThreadExecutor();
+		Future<TaxForm> miss = reader.submit(new Callable<TaxForm>() {
+			public TaxForm call() { return store.get("uid-1"); }
+		});
+		assertTrue("miss not started", loading.await(1, TimeUnit.MINUTES));
+
+		store.put("uid-1", form(100)); // would wait for the miss if it held the segment
+		loaded.countDown();
+		assertEquals(1.0, miss.get(1, TimeUnit.MINUTES).getAmount());
+		reader.shutdown();
+		assertEquals(100.0, store.get("uid-1").getAmount());
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private static TaxForm form(int i) {
+		TaxForm f = new TaxForm();
+		f.setAmount(i);
+		f.setDate("date-" + i);
+		return f;
+	}
+
+}
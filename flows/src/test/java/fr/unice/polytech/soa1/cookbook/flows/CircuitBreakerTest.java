@@ -0,0 +1,138 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.utils.CircuitBreaker;
+import fr.unice.polytech.soa1.cookbook.flows.utils.PartnerException;
+import junit.framework.TestCase;
+import org.junit.*;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A breaker opening after 3 consecutive failures, for 200ms, in front of a partner counting its calls.
+ */
+public class CircuitBreakerTest extends TestCase {
+
+	private static final int OPEN_TIME = 200;
+
+	private final CircuitBreaker breaker = new CircuitBreaker("partner", 3, OPEN_TIME);
+	private final AtomicInteger calls = new AtomicInteger();
+
+	// closed: failures are reported as PartnerException, a success resets the count of consecutive failures
+	@Test
+	public void test_closed() throws Exception {
+		assertFails(failing(new IOException("down")), "Call to partner failed");
+		assertFails(failing(new PartnerException("busy")), "busy"); // not wrapped twice
+		assertEquals("ok", breaker.call(succeeding()));
+		assertFails(failing(new IOException("down")), "Call to partner failed");
+		assertFails(failing(new IOException("down")), "Call to partner failed");
+		assertEquals("ok", breaker.call(succeeding())); // 2 consecutive failures only: still closed
+		assertEquals(6, calls.get());
+	}
+
+	// open after 3 consecutive failures: calls fail immediately, without reaching the partner
+	@Test
+	public void test_open() throws Exception {
+		open();
+		assertFails(succeeding(), "circuit open");
+		assertEquals(3, calls.get());
+	}
+
+	// half-open once the open time elapsed: a trial call succeeding closes the circuit
+	@Test
+	public void test_half_open_success() throws Exception {
+		open();
+		Thread.sleep(OPEN_TIME + 50);
+		assertEquals("ok", breaker.call(succeeding()));
+		assertEquals("ok", breaker.call(succeeding()));
+		assertEquals(5, calls.get());
+	}
+
+	// half-open: a trial call failing opens the circuit again, for another open time
+	@Test
+	public void test_half_open_failure() throws Exception {
+		open();
+		Thread.sleep(OPEN_TIME + 50);
+		assertFails(failing(new IOException("still down")), "Call to partner failed");
+		assertFails(succeeding(), "circuit open");
+		assertEquals(4, calls.get());
+		Thread.sleep(OPEN_TIME + 50);
+		assertEquals("ok", breaker.call(succeeding()));
+	}
+
+	// half-open: only the trial call goes through, the concurrent ones still fail immediately
+	@Test
+	public void test_single_trial() throws Exception {
+		open();
+		Thread.sleep(OPEN_TIME + 50);
+		final CountDownLatch trialStarted = new CountDownLatch(1);
+		final CountDownLatch answer = new CountDownLatch(1);
+		ExecutorService trial = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> result = trial.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return breaker.call(new Callable<String>() {
+						public String call() throws Exception {
+							calls.incrementAndGet();
+							trialStarted.countDown();
+							answer.await();
+							return "trial";
+						}
+					});
+				}
+			});
+			assertTrue(trialStarted.await(1, TimeUnit.MINUTES));
+			assertFails(succeeding(), "circuit open");
+			answer.countDown();
+			assertEquals("trial", result.get(1, TimeUnit.MINUTES));
+			assertEquals("ok", breaker.call(succeeding()));
+			assertEquals(5, calls.get());
+		} finally {
+			answer.countDown();
+			trial.shutdown();
+		}
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	// 3 consecutive failures
+	private void open() {
+		for(int i = 0; i < 3; i++) { assertFails(failing(new IOException("down")), "Call to partner failed"); }
+	}
+
+	private void assertFails(Callable<String> call, String message) {
+		try {
+			breaker.call(call);
+			fail("call went through");
+		} catch (PartnerException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+
+	private Callable<String> succeeding() {
+		return new Callable<String>() {
+			public String call() {
+				calls.incrementAndGet();
+				return "ok";
+			}
+		};
+	}
+
+	private Callable<String> failing(final Exception failure) {
+		return new Callable<String>() {
+			public String call() throws Exception {
+				calls.incrementAndGet();
+				throw failure;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,186 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.utils.CitizenDispatcher;
+import junit.framework.TestCase;
+import org.apache.activemq.camel.component.ActiveMQComponent;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.util.AsyncProcessorHelper;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The dispatcher in front of a route handling each element asynchronously (as AsyncTaxCall does): the element
+ * is done 10ms later on another thread, it fails if it is "fail", and is never done if it is "hang".
+ */
+public class CitizenDispatcherTest extends TestCase {
+
+	private DefaultCamelContext context;
+	private ScheduledExecutorService timer;
+	private final Set<String> done = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+	private final List<AsyncCallback> hanging = Collections.synchronizedList(new ArrayList<AsyncCallback>());
+
+	protected void setUp() throws Exception {
+		timer = Executors.newSingleThreadScheduledExecutor();
+		context = new DefaultCamelContext();
+		context.addRoutes(new RouteBuilder() {
+			@Override public void configure() throws Exception {
+				from("direct:element").process(element);
+			}
+		});
+		context.start();
+	}
+
+	protected void tearDown() throws Exception {
+		release(); // no exchange left in flight when the context stops
+		context.stop();
+		timer.shutdownNow();
+	}
+
+	// the list is processed once all its elements are done, at most `ceiling` of them being in flight
+	@Test
+	public void test_completion() throws Exception {
+		CitizenDispatcher dispatcher = dispatcher(3, 60000);
+		List<String> elements = new ArrayList<String>();
+		for(int i = 0; i < 20; i++) { elements.add("e" + i); }
+		dispatcher.process(list(elements));
+		assertEquals(20, done.size());
+		assertEquals(0, inFlight.get());
+		assertEquals(3, maxInFlight.get());
+	}
+
+	// a failing element is done as well (its failure being handled by the target route), and frees its slot
+	@Test
+	public void test_failure() throws Exception {
+		CitizenDispatcher dispatcher = dispatcher(1, 60000);
+		dispatcher.process(list(Arrays.asList("e1", "fail", "e2")));
+		assertEquals(2, done.size());
+		dispatcher.process(list(Arrays.asList("e3")));
+		assertTrue(done.contains("e3"));
+	}
+
+	// elements not done within the timeout fail the list; they keep their slot until they are done
+	@Test
+	public void test_timeout() throws Exception {
+		CitizenDispatcher dispatcher = dispatcher(2, 200);
+		long start = System.nanoTime();
+		try {
+			dispatcher.process(list(Arrays.asList("e1", "hang", "e2")));
+			fail("list processed with an element never done");
+		} catch (TimeoutException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("1 of 3 elements"));
+		}
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+		assertEquals(2, done.size());
+		assertEquals(1, inFlight.get());
+
+		release();
+		assertEquals(0, inFlight.get());
+		dispatcher.process(list(Arrays.asList("e3", "e4")));
+		assertTrue(done.contains("e4"));
+	}
+
+	// in HandleACitizen, the JMS message timing out is rolled back and redelivered by the broker
+	@Test
+	public void test_redelivery() throws Exception {
+		final CountDownLatch delivered = new CountDownLatch(1);
+		final AtomicInteger deliveries = new AtomicInteger();
+		final CitizenDispatcher dispatcher = dispatcher(10, 200);
+		context.addComponent("activemq",
+				ActiveMQComponent.activeMQComponent("vm://dispatcher?broker.persistent=false&broker.useJmx=false"));
+		context.addRoutes(new RouteBuilder() {
+			@Override public void configure() throws Exception {
+				errorHandler(deadLetterChannel("log:deadPool"));
+				// same consumer as HandleACitizen: only the first delivery hangs
+				from("activemq:dispatch?transacted=true")
+						.errorHandler(noErrorHandler())
+						.process(new Processor() {
+							public void process(Exchange exchange) throws Exception {
+								String element = deliveries.incrementAndGet() == 1 ? "hang" : "e1";
+								exchange.getIn().setBody(Collections.singletonList(element));
+							}
+						})
+						.process(dispatcher)
+						.process(new Processor() {
+							public void process(Exchange exchange) throws Exception { delivered.countDown(); }
+						});
+			}
+		});
+		context.createProducerTemplate().sendBody("activemq:dispatch", "message");
+		assertTrue("message not redelivered in time", delivered.await(1, TimeUnit.MINUTES));
+		assertEquals(2, deliveries.get());
+		assertTrue(done.contains("e1"));
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private CitizenDispatcher dispatcher(int ceiling, long timeout) {
+		return new CitizenDispatcher(context.getEndpoint("direct:element"), ceiling, timeout);
+	}
+
+	private Exchange list(List<String> elements) {
+		Exchange exchange = context.getEndpoint("direct:list").createExchange();
+		exchange.getIn().setBody(elements);
+		return exchange;
+	}
+
+	// completes the hanging elements
+	private void release() {
+		synchronized (hanging) {
+			for(AsyncCallback callback: hanging) {
+				inFlight.decrementAndGet();
+				callback.done(false);
+			}
+			hanging.clear();
+		}
+	}
+
+	// done 10ms later by the timer thread, failed if "fail", never done if "hang"
+	private final AsyncProcessor element = new AsyncProcessor() {
+		public boolean process(final Exchange exchange, final AsyncCallback callback) {
+			final String element = exchange.getIn().getBody(String.class);
+			int current = inFlight.incrementAndGet();
+			for(int max = maxInFlight.get(); current > max && !maxInFlight.compareAndSet(max, current); max = maxInFlight.get()) { }
+			if ("hang".equals(element)) {
+				hanging.add(callback);
+				return false;
+			}
+			timer.schedule(new Runnable() {
+				public void run() {
+					if ("fail".equals(element))
+						exchange.setException(new IllegalStateException("failed"));
+					else
+						done.add(element);
+					inFlight.decrementAndGet();
+					callback.done(false);
+				}
+			}, 10, TimeUnit.MILLISECONDS);
+			return false;
+		}
+
+		public void process(Exchange exchange) throws Exception {
+			AsyncProcessorHelper.process(this, exchange);
+		}
+	};
+
+}
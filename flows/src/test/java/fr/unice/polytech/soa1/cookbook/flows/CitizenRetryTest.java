@@ -0,0 +1,129 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.RETRY_MAX;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.utils.PartnerException;
+import junit.framework.TestCase;
+import org.apache.activemq.camel.component.ActiveMQComponent;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.AdviceWithRouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.model.RouteDefinition;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The retries of HandleACitizen, the tax computation failing for the first `failures` calls. The broker has no
+ * scheduler: the retries are delivered immediately, whatever their delay.
+ */
+public class CitizenRetryTest extends TestCase {
+
+	private DefaultCamelContext context;
+	private int failures;
+	private final List<Object> retryCounts = Collections.synchronizedList(new ArrayList<Object>());
+	private final List<Object> delays = Collections.synchronizedList(new ArrayList<Object>());
+	private final AtomicReference<Exchange> given = new AtomicReference<Exchange>();
+	private final AtomicReference<Exchange> stored = new AtomicReference<Exchange>();
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	protected void setUp() throws Exception {
+		context = new DefaultCamelContext();
+		context.addComponent("activemq",
+				ActiveMQComponent.activeMQComponent("vm://retries?broker.persistent=false&broker.useJmx=false"));
+		context.addRoutes(new HandleACitizen());
+		route("direct:handleACitizen").adviceWith(context, new AdviceWithRouteBuilder() {
+			@Override public void configure() throws Exception {
+				interceptSendToEndpoint("direct:generator").skipSendToOriginalEndpoint().setBody(constant("uid"));
+				interceptSendToEndpoint("direct:simpleTaxMethod").skipSendToOriginalEndpoint().process(taxComputation);
+				interceptSendToEndpoint("direct:generateLetter").skipSendToOriginalEndpoint().stop();
+				interceptSendToEndpoint("direct:storeTaxForm").skipSendToOriginalEndpoint().process(record(stored));
+				interceptSendToEndpoint("log:deadPool").skipSendToOriginalEndpoint().process(record(given));
+			}
+		});
+		context.start();
+	}
+
+	protected void tearDown() throws Exception {
+		context.stop();
+	}
+
+	// a citizen failing every time is given up after RETRY_MAX retries, each retry being counted
+	@Test
+	public void test_give_up() throws Exception {
+		failures = Integer.MAX_VALUE;
+		handle();
+		assertNull(stored.get());
+		assertNotNull(given.get());
+		assertEquals("Doe", given.get().getIn().getBody(Person.class).getLastName());
+		assertEquals(RETRY_MAX + 1, given.get().getIn().getHeader("retry_count"));
+		assertEquals(RETRY_MAX + 1, retryCounts.size());
+		for(int i = 1; i <= RETRY_MAX; i++) { assertEquals(i, retryCounts.get(i)); }
+	}
+
+	// a retried citizen is not delayed again when its retry is delivered, and its retries are forgotten once
+	// the partners answered
+	@Test
+	public void test_retry_then_success() throws Exception {
+		failures = 2;
+		handle();
+		assertNull(given.get());
+		assertNotNull(stored.get());
+		assertEquals(3, retryCounts.size());
+		assertEquals(Collections.nCopies(3, null), delays);
+		assertNull(stored.get().getIn().getHeader("retry_count"));
+		assertNull(stored.get().getIn().getHeader("AMQ_SCHEDULED_DELAY"));
+		assertEquals("uid-1", stored.get().getIn().getHeader("person_uid"));
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	// a citizen of income 1000 (simple method), handled until it is stored or given up
+	private void handle() throws Exception {
+		Person p = new Person();
+		p.setUid("uid-1");
+		p.setLastName("Doe");
+		p.setIncome(1000);
+		context.createProducerTemplate().sendBody("direct:handleACitizen", p);
+		assertTrue("citizen neither stored nor given up in time", done.await(1, TimeUnit.MINUTES));
+	}
+
+	// records the headers of each call, and fails as a partner for the first `failures` calls
+	private final Processor taxComputation = new Processor() {
+		public void process(Exchange exchange) throws Exception {
+			retryCounts.add(exchange.getIn().getHeader("retry_count"));
+			delays.add(exchange.getIn().getHeader("AMQ_SCHEDULED_DELAY"));
+			if (retryCounts.size() <= failures)
+				throw new PartnerException("tax computation down");
+			exchange.getIn().setBody(new TaxForm());
+		}
+	};
+
+	private Processor record(final AtomicReference<Exchange> reached) {
+		return new Processor() {
+			public void process(Exchange exchange) throws Exception {
+				reached.set(exchange.copy());
+				done.countDown();
+			}
+		};
+	}
+
+	private RouteDefinition route(String from) {
+		for(RouteDefinition route: context.getRouteDefinitions()) {
+			if (route.getInputs().get(0).getUri().equals(from))
+				return route;
+		}
+		throw new IllegalArgumentException("No route from " + from);
+	}
+
+}
@@ -0,0 +1,188 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Endpoints.*;
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.*;
+
+import fr.unice.polytech.soa1.cookbook.flows.utils.BinaryDataFormat;
+import junit.framework.TestCase;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.AdviceWithRouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.*;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class CsvStreamingTest extends TestCase {
+
+	// 1M rows (about 130MB of CSV, twice the CEILING) by default, 10M with the long-tests profile
+	private static final int ROWS = Integer.getInteger("flows.test.csvRows", 1000000);
+	private static final long CEILING = 64L * 1024 * 1024; // heap growth allowed while the file is handled
+
+	private File directory;
+	private long peak = 0;
+	private DefaultCamelContext context;
+
+	protected void setUp() throws Exception {
+		directory = new File("target/csv-streaming");
+		delete(directory);
+		directory.mkdirs();
+		context = new DefaultCamelContext();
+		context.addComponent("activemq", context.getComponent("mock")); // no citizen reaches the queue
+		context.addRoutes(new HandleCSVFile());
+	}
+
+	protected void tearDown() throws Exception {
+		context.stop();
+		delete(directory);
+	}
+
+	// the live heap is sampled after every collection of the old generation while the file is handled, and the
+	// JVM running this test has a small heap (see pom.xml): a short spike fails as well
+	@Test
+	public void test_heap_stays_flat() throws Exception {
+		final AtomicLong citizens = new AtomicLong();
+		final CountDownLatch done = new CountDownLatch(1);
+		context.getRouteDefinitions().get(0).adviceWith(context, new AdviceWithRouteBuilder() {
+			@Override public void configure() throws Exception {
+				replaceFromWith("file:" + directory.getPath() + "?noop=true&antInclude=*.csv");
+				interceptSendToEndpoint("direct:publishCitizen")
+						.skipSendToOriginalEndpoint()
+						.process(new Processor() {
+							public void process(Exchange exchange) throws Exception {
+								if (exchange.getIn().getHeader(Exchange.AGGREGATION_COMPLETE_ALL_GROUPS) == null)
+									citizens.incrementAndGet(); // not the end of file
+							}
+						});
+				weaveAddLast().process(new Processor() { // every line of the file is done
+					public void process(Exchange exchange) throws Exception { done.countDown(); }
+				});
+			}
+		});
+		File csv = new File(directory, "citizens.csv");
+		assertTrue(generate(new File(directory, "citizens.tmp"), ROWS).renameTo(csv)); // complete file only
+		long before = usedHeap();
+		MemoryPoolMXBean old = oldGeneration();
+		old.setCollectionUsageThreshold(before + CEILING);
+		NotificationListener sampler = new NotificationListener() {
+			public void handleNotification(Notification notification, Object handback) {
+				peak(oldGeneration().getCollectionUsage().getUsed());
+			}
+		};
+		for(GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+			((NotificationEmitter) gc).addNotificationListener(sampler, null, null);
+		}
+
+		try {
+			context.start();
+			assertTrue("file not handled in time", done.await(ROWS / 2000, TimeUnit.SECONDS));
+		} finally {
+			for(GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+				((NotificationEmitter) gc).removeNotificationListener(sampler);
+			}
+		}
+
+		assertEquals(ROWS, citizens.get());
+		peak(usedHeap());
+		long growth = peak - before;
+		String message = "heap grew by " + (growth >> 20) + "MB for a " + (csv.length() >> 20) + "MB file";
+		assertTrue(message, growth < CEILING);
+		assertEquals(message, 0, old.getCollectionUsageThresholdCount());
+	}
+
+	// the summary is logged once the last (incomplete) batch is transferred, not when its timeout expires
+	@Test
+	public void test_last_batch_before_summary() throws Exception {
+		final int rows = 2 * CITIZEN_BATCH_SIZE + 1;
+		final AtomicLong transferred = new AtomicLong(-1);
+		final CountDownLatch done = new CountDownLatch(1);
+		final MockEndpoint queue = context.getEndpoint(HANDLE_CITIZEN, MockEndpoint.class);
+		context.getRouteDefinitions().get(0).adviceWith(context, new AdviceWithRouteBuilder() {
+			@Override public void configure() throws Exception {
+				replaceFromWith("file:" + directory.getPath() + "?noop=true&antInclude=*.csv");
+				weaveAddLast().process(new Processor() { // right after the summary
+					public void process(Exchange exchange) throws Exception {
+						long citizens = 0;
+						for(Exchange batch: queue.getReceivedExchanges()) {
+							byte[] bytes = batch.getIn().getBody(byte[].class);
+							citizens += ((List) new BinaryDataFormat().unmarshal(batch, new ByteArrayInputStream(bytes))).size();
+						}
+						transferred.set(citizens);
+						done.countDown();
+					}
+				});
+			}
+		});
+		assertTrue(generate(new File(directory, "citizens.tmp"), rows).renameTo(new File(directory, "citizens.csv")));
+
+		context.start();
+		assertTrue("file not handled in time", done.await(1, TimeUnit.MINUTES));
+		assertEquals(rows, transferred.get());
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private synchronized void peak(long used) {
+		peak = Math.max(peak, used);
+	}
+
+	// the pool of the long-lived objects, whose usage after a collection is the live heap
+	private static MemoryPoolMXBean oldGeneration() {
+		for(MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()
+					&& (pool.getName().contains("Old") || pool.getName().contains("Tenured")))
+				return pool;
+		}
+		throw new IllegalStateException("No old generation in " + ManagementFactory.getMemoryPoolMXBeans());
+	}
+
+	// live objects only (after a full collection)
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static File generate(File file, int rows) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(file), 1 << 16);
+		try {
+			out.write("Navn,Fodselar,Postnummer,Postaddressen,Epost,Fodselsnummer,Inntekt,Formue\n");
+			for(int i = 0; i < rows; i++) {
+				out.write(String.format(Locale.US, "\"Booker%d, Vernon E.\",1934,%05d,\"Ap #618-9302, Morbi Av.\",ante@semperNam.net,"
+						+ "C79D1004-A72D-1817-20B2-%012X,\"%,dKr\",\"%,dKr\"\n", i, i % 100000, i, i % 90000, i % 7000));
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null)
+			for(File c: children) { delete(c); }
+		f.delete();
+	}
+
+}
@@ -0,0 +1,166 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Endpoints.*;
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.*;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.utils.IdentifierPool;
+import fr.unice.polytech.soa1.cookbook.flows.utils.PartnerException;
+import junit.framework.TestCase;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWithRouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.model.RouteDefinition;
+import org.junit.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The routes of CallExternalPartners, the partners (HTTP services) being replaced by local stubs.
+ */
+public class ExternalPartnersTest extends TestCase {
+
+	private DefaultCamelContext context;
+	private final AtomicInteger blocks = new AtomicInteger();
+
+	protected void setUp() throws Exception {
+		context = new DefaultCamelContext();
+		context.addRoutes(new CallExternalPartners());
+	}
+
+	protected void tearDown() throws Exception {
+		context.stop();
+	}
+
+	// every identifier taken from the pool is unique, and the generator is called once per block
+	@Test
+	public void test_identifier_pool() throws Exception {
+		stubGenerator();
+		context.start();
+		final int count = 4 * ID_BLOCK_SIZE;
+		final Set<String> identifiers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final CountDownLatch done = new CountDownLatch(count);
+		final ProducerTemplate template = context.createProducerTemplate();
+		ExecutorService citizens = Executors.newFixedThreadPool(8);
+		for(int i = 0; i < count; i++) {
+			citizens.execute(new Runnable() {
+				public void run() {
+					identifiers.add(template.requestBody("direct:generator", "", String.class));
+					done.countDown();
+				}
+			});
+		}
+		assertTrue("identifiers not taken in time", done.await(1, TimeUnit.MINUTES));
+		citizens.shutdown();
+		assertEquals(count, identifiers.size());
+		assertTrue(blocks.get() + " blocks", blocks.get() >= 4 && blocks.get() <= 5); // 5: prefetch of the next block
+	}
+
+	// a generator not answering: taking an identifier fails as a partner failure (the citizen is retried later)
+	@Test
+	public void test_hanging_generator() throws Exception {
+		final CountDownLatch answer = new CountDownLatch(1);
+		Callable<List<String>> generator = new Callable<List<String>>() {
+			public List<String> call() throws Exception {
+				answer.await();
+				return Collections.singletonList("id");
+			}
+		};
+		ExecutorService refills = Executors.newSingleThreadExecutor();
+		IdentifierPool pool = new IdentifierPool(1, 100, generator, refills);
+		try {
+			pool.take();
+			fail("identifier taken from a hanging generator");
+		} catch (PartnerException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("after 100ms"));
+		} finally {
+			answer.countDown();
+			refills.shutdown();
+		}
+	}
+
+	// unbatched calls go through the breaker of the tax computation service: a failure is a partner failure,
+	// and the circuit opens after BREAKER_FAILURES consecutive failures (the service is not called anymore)
+	@Test
+	public void test_unbatched_tax_call() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		route("direct:simpleTaxCall").adviceWith(context, new AdviceWithRouteBuilder() {
+			@Override public void configure() throws Exception {
+				interceptSendToEndpoint(TAX_COMPUTATION_SERVICE)
+						.skipSendToOriginalEndpoint()
+						.process(new Processor() {
+							public void process(Exchange exchange) throws Exception {
+								calls.incrementAndGet();
+								throw new IllegalStateException("service down");
+							}
+						});
+			}
+		});
+		context.start();
+		for(int i = 0; i < BREAKER_FAILURES; i++) {
+			Exception e = simpleTaxCall().getException();
+			assertTrue(String.valueOf(e), e instanceof PartnerException);
+			assertFalse(e.getMessage(), e.getMessage().contains("circuit open"));
+		}
+		Exception e = simpleTaxCall().getException();
+		assertTrue(String.valueOf(e), e instanceof PartnerException);
+		assertTrue(e.getMessage(), e.getMessage().contains("circuit open"));
+		assertEquals(BREAKER_FAILURES, calls.get());
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	// a citizen sent to the unbatched simple tax call
+	private Exchange simpleTaxCall() {
+		Person p = new Person();
+		p.setUid("uid");
+		p.setIncome(1000);
+		Exchange exchange = context.getEndpoint("direct:simpleTaxCall").createExchange();
+		exchange.getIn().setBody(p);
+		exchange.setProperty("p_uuid", "p-uuid");
+		return context.createProducerTemplate().send("direct:simpleTaxCall", exchange);
+	}
+
+	// the generator service answers ["id-0","id-1", ...] with ID_BLOCK_SIZE new identifiers
+	private void stubGenerator() throws Exception {
+		route("direct:generatorBlock").adviceWith(context, new AdviceWithRouteBuilder() {
+			@Override public void configure() throws Exception {
+				interceptSendToEndpoint(GEN_SERVICE + "*")
+						.skipSendToOriginalEndpoint()
+						.process(new Processor() {
+							public void process(Exchange exchange) throws Exception {
+								int block = blocks.getAndIncrement();
+								StringBuilder json = new StringBuilder("[");
+								for(int i = 0; i < ID_BLOCK_SIZE; i++) {
+									json.append(i == 0 ? "" : ",").append("\"id-").append(block).append('-').append(i).append('"');
+								}
+								exchange.getIn().setBody(new ByteArrayInputStream(json.append(']').toString().getBytes("UTF-8")));
+							}
+						});
+			}
+		});
+	}
+
+	private RouteDefinition route(String from) {
+		for(RouteDefinition route: context.getRouteDefinitions()) {
+			if (route.getInputs().get(0).getUri().equals(from))
+				return route;
+		}
+		throw new IllegalArgumentException("No route from " + from);
+	}
+
+}
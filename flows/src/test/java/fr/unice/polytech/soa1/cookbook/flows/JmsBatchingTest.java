@@ -0,0 +1,160 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Endpoints.*;
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.*;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.utils.BinaryDataFormat;
+import junit.framework.TestCase;
+import org.apache.activemq.camel.component.ActiveMQComponent;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWithRouteBuilder;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.model.RouteDefinition;
+import org.junit.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Citizens going through the handleACitizen queue of an embedded broker (vm://), from the batching producer
+ * of HandleCSVFile to the consumer of HandleACitizen that unpacks the batches.
+ */
+public class JmsBatchingTest extends TestCase {
+
+	private static final int CITIZENS = 5000;
+
+	private DefaultCamelContext context;
+	private final AtomicInteger messages = new AtomicInteger();
+	private final Set<String> handled = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private volatile CountDownLatch done;
+
+	protected void setUp() throws Exception {
+		context = new DefaultCamelContext();
+		context.addComponent("activemq",
+				ActiveMQComponent.activeMQComponent("vm://flows?broker.persistent=false&broker.useJmx=false"));
+		context.addRoutes(new HandleCSVFile());
+		context.addRoutes(new HandleACitizen());
+		// keeping the batching producer and the batch consumer only
+		List<RouteDefinition> others = new ArrayList<RouteDefinition>();
+		for(RouteDefinition route: context.getRouteDefinitions()) {
+			String from = route.getInputs().get(0).getUri();
+			if (!from.equals("direct:publishCitizen") && !from.startsWith(HANDLE_CITIZEN))
+				others.add(route);
+		}
+		context.removeRouteDefinitions(others);
+		for(RouteDefinition route: context.getRouteDefinitions()) {
+			if (route.getInputs().get(0).getUri().startsWith(HANDLE_CITIZEN)) {
+				route.adviceWith(context, new AdviceWithRouteBuilder() {
+					@Override public void configure() throws Exception {
+						interceptFrom().process(new Processor() {
+							public void process(Exchange exchange) throws Exception { messages.incrementAndGet(); }
+						});
+					}
+				});
+			}
+		}
+		context.addRoutes(new RouteBuilder() {
+			@Override public void configure() throws Exception {
+				from("direct:handleACitizen").process(new Processor() { // one exchange per citizen
+					public void process(Exchange exchange) throws Exception {
+						handled.add(exchange.getIn().getBody(Person.class).getUid());
+						done.countDown();
+					}
+				});
+			}
+		});
+		context.start();
+	}
+
+	protected void tearDown() throws Exception {
+		context.stop();
+	}
+
+	@Test
+	public void test_batches_are_unpacked() throws Exception {
+		long elapsed = batched(CITIZENS);
+		assertTrue("citizens not handled in time", elapsed >= 0);
+		assertEquals(CITIZENS, handled.size());
+		assertTrue(messages.get() + " messages", messages.get() <= 2 * CITIZENS / CITIZEN_BATCH_SIZE);
+	}
+
+	// messages per second before (one message per citizen) and after (batches)
+	@Test
+	public void test_throughput() throws Exception {
+		batched(CITIZENS); // warm-up
+		single(CITIZENS);
+		long before = single(CITIZENS);
+		long after = batched(CITIZENS);
+		assertTrue("citizens not handled in time", before >= 0 && after >= 0);
+		String rates = "one message per citizen: " + rate(before) + " citizens/s, batches: " + rate(after) + " citizens/s";
+		assertTrue(rates, after < before);
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	// ns spent to handle the citizens sent through the batching producer, -1 when not done in time
+	private long batched(int count) throws Exception {
+		ProducerTemplate template = context.createProducerTemplate();
+		start(count);
+		long start = System.nanoTime();
+		for(int i = 0; i < count; i++) { template.sendBody("direct:publishCitizen", citizen(i)); }
+		return await(start);
+	}
+
+	// ns spent to handle the citizens sent one by one in their own JMS message, -1 when not done in time
+	private long single(int count) throws Exception {
+		ProducerTemplate template = context.createProducerTemplate();
+		BinaryDataFormat format = new BinaryDataFormat();
+		start(count);
+		long start = System.nanoTime();
+		for(int i = 0; i < count; i++) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			format.marshal(null, Collections.singletonList(citizen(i)), bytes);
+			template.sendBody(HANDLE_CITIZEN, bytes.toByteArray());
+		}
+		return await(start);
+	}
+
+	private void start(int count) {
+		handled.clear();
+		messages.set(0);
+		done = new CountDownLatch(count);
+	}
+
+	private long await(long start) throws InterruptedException {
+		if (!done.await(2, TimeUnit.MINUTES))
+			return -1;
+		return System.nanoTime() - start;
+	}
+
+	private static long rate(long elapsed) {
+		return CITIZENS * TimeUnit.SECONDS.toNanos(1) / elapsed;
+	}
+
+	private static Person citizen(int i) {
+		Person p = new Person();
+		p.setFirstName("Vernon E.");
+		p.setLastName("Booker" + i);
+		p.setZipCode(69207);
+		p.setAddress("Ap #618-9302 Morbi Av.");
+		p.setEmail("ante@semperNam.net");
+		p.setUid(String.format("C79D1004-A72D-1817-20B2-%012X", i));
+		p.setIncome(11889);
+		p.setAssets(83697);
+		return p;
+	}
+
+}
@@ -0,0 +1,91 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.storage.LetterSink;
+import fr.unice.polytech.soa1.cookbook.flows.utils.LetterWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing 20,000 letters: appended to a LetterSink against one file per letter (what the file endpoint of
+ * direct:generateLetter does). Each iteration starts from an empty directory, so that every file is created.
+ *
+ *   mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *       -Dexec.args="-cp %classpath org.openjdk.jmh.Main LetterSinkBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LetterSinkBenchmark {
+
+	private static final int LETTERS = 20000;
+
+	private final File directory = new File("target/letter-benchmark");
+	private final String[] uids = new String[LETTERS];
+	private byte[] letter;
+	private LetterSink sink;
+
+	@Setup
+	public void setUp() {
+		for(int i = 0; i < LETTERS; i++) { uids[i] = String.format("C79D1004-A72D-1817-20B2-%012X", i); }
+		Person p = new Person();
+		p.setFirstName("Tashya");
+		p.setLastName("Collier");
+		p.setAddress("P.O. Box 598, 1908 In Ave");
+		p.setEmail("magna@luctussitamet.org");
+		p.setIncome(43286);
+		TaxForm form = new TaxForm();
+		form.setAmount(7985.08);
+		form.setDate("Sat Oct 17 23:27:42 UTC 2026");
+		letter = new LetterWriter().write(p, form, "COMPLEX");
+	}
+
+	@Setup(Level.Iteration)
+	public void emptyDirectory() throws IOException {
+		delete(directory);
+		sink = new LetterSink(directory, 64 * 1024 * 1024, 256 * 1024);
+	}
+
+	@TearDown(Level.Iteration)
+	public void closeSink() throws IOException {
+		sink.close();
+	}
+
+	@Benchmark
+	public void segments() throws IOException {
+		for(String uid: uids) { sink.append(uid, letter); }
+		sink.flush();
+	}
+
+	@Benchmark
+	public void filePerLetter() throws IOException {
+		for(String uid: uids) {
+			FileOutputStream out = new FileOutputStream(new File(directory, uid + ".txt"));
+			try {
+				out.write(letter);
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null)
+			for(File c: children) { delete(c); }
+		f.delete();
+	}
+
+}
@@ -0,0 +1,168 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.*;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.storage.LetterSink;
+import junit.framework.TestCase;
+import org.apache.activemq.camel.component.ActiveMQComponent;
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.*;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Letters appended by the direct:generateLetter route of HandleACitizen (segments mode).
+ */
+public class LetterSinkTest extends TestCase {
+
+	private DefaultCamelContext context;
+
+	protected void setUp() throws Exception {
+		context = new DefaultCamelContext();
+		context.addComponent("activemq",
+				ActiveMQComponent.activeMQComponent("vm://letters?broker.persistent=false&broker.useJmx=false"));
+		context.addRoutes(new HandleACitizen());
+		context.start();
+	}
+
+	protected void tearDown() throws Exception {
+		context.stop();
+	}
+
+	// the letters still buffered are written when the context stops
+	@Test
+	public void test_written_on_stop() throws Exception {
+		ProducerTemplate template = context.createProducerTemplate();
+		String[] uids = new String[10];
+		for(int i = 0; i < uids.length; i++) {
+			uids[i] = UUID.randomUUID().toString();
+			Exchange exchange = context.getEndpoint("direct:generateLetter").createExchange();
+			exchange.setProperty("person", person(i));
+			exchange.setProperty("p_uuid", uids[i]);
+			exchange.setProperty("tax_computation_method", "SIMPLE");
+			exchange.getIn().setBody(form(i));
+			template.send("direct:generateLetter", exchange);
+			assertNull(exchange.getException());
+		}
+		context.stop();
+
+		LetterSink reopened = new LetterSink(new File(LETTER_DIRECTORY), LETTER_SEGMENT_SIZE, LETTER_BUFFER_SIZE);
+		try {
+			for(int i = 0; i < uids.length; i++) {
+				byte[] letter = reopened.read(uids[i]);
+				assertNotNull("letter " + i + " lost", letter);
+				assertTrue(new String(letter, "UTF-8").contains("Lastname-" + i));
+			}
+		} finally {
+			reopened.close();
+		}
+	}
+
+	// reopening indexes the complete records (long uid, letter larger than the buffers, several segments), and
+	// truncates the incomplete one at the end of the last segment
+	@Test
+	public void test_scan() throws Exception {
+		File directory = emptyDirectory("target/letter-scan");
+		char[] longUid = new char[300];
+		Arrays.fill(longUid, 'u');
+		byte[] large = new byte[100 * 1024];
+		Arrays.fill(large, (byte) 'l');
+		LetterSink sink = new LetterSink(directory, 64 * 1024, 1024);
+		sink.append("a", "first".getBytes("UTF-8"));
+		sink.append(new String(longUid), large);
+		sink.append("b", "last".getBytes("UTF-8"));
+		sink.close();
+		File last = new File(directory, "letters-00002.log");
+		long complete = last.length();
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(last, true));
+		out.writeShort(1);
+		out.write('c');
+		out.writeInt(100);
+		out.write("crash".getBytes("UTF-8"));
+		out.close();
+
+		LetterSink reopened = new LetterSink(directory, 64 * 1024, 1024);
+		try {
+			assertEquals("first", new String(reopened.read("a"), "UTF-8"));
+			assertTrue(Arrays.equals(large, reopened.read(new String(longUid))));
+			assertEquals("last", new String(reopened.read("b"), "UTF-8"));
+			assertNull(reopened.read("c"));
+			assertEquals(complete, last.length());
+			reopened.append("d", "after".getBytes("UTF-8"));
+			assertEquals("after", new String(reopened.read("d"), "UTF-8"));
+		} finally {
+			reopened.close();
+		}
+	}
+
+	// the index of the letters, kept on the heap, takes less than 200 bytes per UUID (see LetterSink)
+	@Test
+	public void test_index_heap() throws Exception {
+		int count = 100000;
+		File directory = emptyDirectory("target/letter-index");
+		LetterSink sink = new LetterSink(directory, LETTER_SEGMENT_SIZE, LETTER_BUFFER_SIZE);
+		byte[] letter = "letter".getBytes("UTF-8");
+		for(int i = 0; i < count; i++) { sink.append(uid(i), letter); }
+		sink.close();
+
+		long before = usedHeap();
+		LetterSink reopened = new LetterSink(directory, LETTER_SEGMENT_SIZE, LETTER_BUFFER_SIZE);
+		long perLetter = (usedHeap() - before) / count;
+		try {
+			assertEquals("letter", new String(reopened.read(uid(count - 1)), "UTF-8"));
+			assertTrue(perLetter + " bytes per letter", perLetter < 200);
+		} finally {
+			reopened.close();
+		}
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private static String uid(int i) {
+		return String.format("C79D1004-A72D-1817-20B2-%012X", i);
+	}
+
+	private static File emptyDirectory(String path) {
+		File directory = new File(path);
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for(File file: files) { assertTrue(file.delete()); }
+		}
+		return directory;
+	}
+
+	// live objects only (after a full collection)
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static Person person(int i) {
+		Person p = new Person();
+		p.setFirstName("Firstname-" + i);
+		p.setLastName("Lastname-" + i);
+		p.setAddress("Address " + i);
+		p.setEmail("citizen" + i + "@example.org");
+		p.setIncome(1000 * i);
+		return p;
+	}
+
+	private static TaxForm form(int i) {
+		TaxForm f = new TaxForm();
+		f.setAmount(200.0 * i);
+		f.setDate("Sat Oct 17 23:27:42 UTC 2026");
+		return f;
+	}
+
+}
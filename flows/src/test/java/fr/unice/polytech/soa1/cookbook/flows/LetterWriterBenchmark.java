@@ -0,0 +1,71 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.utils.LetterWriter;
+import fr.unice.polytech.soa1.cookbook.flows.utils.Utf8Buffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering one letter as UTF-8 bytes: the compiled template of LetterWriter (as a new array, and into a
+ * reused buffer) against the previous string concatenation encoded by Camel afterwards.
+ *
+ *   mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *       -Dexec.args="-cp %classpath org.openjdk.jmh.Main LetterWriterBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LetterWriterBenchmark {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final LetterWriter writer = new LetterWriter();
+	private final Utf8Buffer buffer = new Utf8Buffer(512);
+	private final Person person = new Person();
+	private final TaxForm form = new TaxForm();
+
+	@Setup
+	public void setUp() {
+		person.setFirstName("Tashya");
+		person.setLastName("Collier");
+		person.setAddress("P.O. Box 598, 1908 In Ave");
+		person.setZipCode(14666);
+		person.setUid("F6D8551C-F600-5125-3AFD-47860BB9A20A");
+		form.setAmount(7985.08);
+		form.setDate("Sat Oct 17 23:27:42 UTC 2026");
+	}
+
+	@Benchmark
+	public byte[] concatenation() {
+		StringBuilder b = new StringBuilder();
+		b.append("Dear " + person.getFirstName() + " " + person.getLastName() + ", \n");
+		b.append("\n");
+		b.append("  Address: " + person.getAddress() + " " + person.getZipCode() + "\n");
+		b.append("  ID: " + person.getUid() + "\n");
+		b.append("\n\n");
+		b.append("Taxes computed using the " + "COMPLEX" + " method on " + form.getDate() + "\n");
+		b.append("\n\n");
+		b.append("Amount to pay: " + form.getAmount() + "\n");
+		b.append("\n");
+		return b.toString().getBytes(UTF_8);
+	}
+
+	@Benchmark
+	public byte[] template() {
+		return writer.write(person, form, "COMPLEX");
+	}
+
+	@Benchmark
+	public Utf8Buffer templateIntoBuffer() {
+		writer.render(person, form, "COMPLEX", buffer.reset());
+		return buffer;
+	}
+
+}
@@ -0,0 +1,149 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.utils.LetterTemplate;
+import fr.unice.polytech.soa1.cookbook.flows.utils.LetterWriter;
+import fr.unice.polytech.soa1.cookbook.flows.utils.Utf8Buffer;
+import junit.framework.TestCase;
+import org.junit.*;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Letters written by LetterWriter (default layout), against a golden letter and against the previous String
+ * concatenation (kept below as previousWrite, its output encoded as UTF-8).
+ */
+public class LetterWriterTest extends TestCase {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	// texts going through every branch of the UTF-8 encoding: 1 to 4 bytes, an unpaired surrogate, and null
+	private static final String[] TEXTS = { "Tashya", "", "Zo\u00e9 M\u00fcller", "\u4e2d\u6587",
+			"emoji \uD83D\uDE00", "broken \uD83D", "P.O. Box 598, 1908 In Ave", "<&>", null };
+
+	// amounts printed as Double.toString does: integral, negative, scientific notation, special values
+	private static final double[] AMOUNTS = { 7985.08, 0.0, -0.0, 42, -1.5, 1e-5, 1.0E7, 123456789.125,
+			Double.MAX_VALUE, Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY, 0.1 + 0.2 };
+
+	private LetterWriter writer = null;
+	protected void setUp() { this.writer = new LetterWriter(); }
+
+	// a letter, byte for byte
+	@Test
+	public void test_golden() {
+		Person p = person("Tashya", "Collier", "P.O. Box 598, 1908 In Ave", 14666, "F6D8551C-F600-5125-3AFD-47860BB9A20A");
+		assertBytes("Dear Tashya Collier, \n"
+				+ "\n"
+				+ "  Address: P.O. Box 598, 1908 In Ave 14666\n"
+				+ "  ID: F6D8551C-F600-5125-3AFD-47860BB9A20A\n"
+				+ "\n\n"
+				+ "Taxes computed using the COMPLEX method on Sat Oct 17 23:27:42 UTC 2026\n"
+				+ "\n\n"
+				+ "Amount to pay: 7985.08\n"
+				+ "\n",
+				writer.write(p, form(7985.08, "Sat Oct 17 23:27:42 UTC 2026"), "COMPLEX"));
+	}
+
+	// missing fields are printed as "null", as the concatenation did
+	@Test
+	public void test_null_fields() {
+		Person p = new Person();
+		assertBytes("Dear null null, \n"
+				+ "\n"
+				+ "  Address: null 0\n"
+				+ "  ID: null\n"
+				+ "\n\n"
+				+ "Taxes computed using the null method on null\n"
+				+ "\n\n"
+				+ "Amount to pay: 0.0\n"
+				+ "\n",
+				writer.write(p, new TaxForm(), null));
+	}
+
+	// same bytes as the previous concatenation, the buffer of the thread being reused between letters
+	@Test
+	public void test_same_as_previous_writer() {
+		Random random = new Random(42);
+		Utf8Buffer buffer = new Utf8Buffer(16);
+		for(int n = 0; n < 10000; n++) {
+			Person p = person(text(random), text(random), text(random), random.nextInt(), text(random));
+			TaxForm form = form(random.nextBoolean() ? AMOUNTS[random.nextInt(AMOUNTS.length)] : random.nextDouble() * 1e6,
+					text(random));
+			String method = random.nextBoolean() ? "SIMPLE" : (random.nextBoolean() ? "COMPLEX" : null);
+			String expected = previousWrite(p, form, method);
+			assertBytes(expected, writer.write(p, form, method));
+			writer.render(p, form, method, buffer.reset());
+			assertBytes(expected, buffer.toByteArray());
+		}
+	}
+
+	// templates referring to an unknown field, or not terminated, are rejected when compiled
+	@Test
+	public void test_invalid_templates() {
+		try {
+			LetterTemplate.compile("Dear ${name}");
+			fail("unknown field accepted");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("[name]"));
+		}
+		try {
+			LetterTemplate.compile("Dear ${firstName");
+			fail("unterminated placeholder accepted");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Unterminated"));
+		}
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private static String text(Random random) {
+		return TEXTS[random.nextInt(TEXTS.length)];
+	}
+
+	private static Person person(String firstName, String lastName, String address, int zipCode, String uid) {
+		Person p = new Person();
+		p.setFirstName(firstName);
+		p.setLastName(lastName);
+		p.setAddress(address);
+		p.setZipCode(zipCode);
+		p.setUid(uid);
+		return p;
+	}
+
+	private static TaxForm form(double amount, String date) {
+		TaxForm f = new TaxForm();
+		f.setAmount(amount);
+		f.setDate(date);
+		return f;
+	}
+
+	private static void assertBytes(String expected, byte[] actual) {
+		byte[] bytes = expected.getBytes(UTF_8);
+		assertEquals(new String(bytes, UTF_8), new String(actual, UTF_8)); // readable message on failure
+		assertTrue(Arrays.equals(bytes, actual));
+	}
+
+	// The previous writer (String concatenation, written as UTF-8)
+
+	private static String previousWrite(Person p, TaxForm form, String method) {
+		StringBuilder b = new StringBuilder();
+
+		b.append("Dear " + p.getFirstName() + " " + p.getLastName() + ", \n");
+		b.append("\n");
+		b.append("  Address: " + p.getAddress() + " " + p.getZipCode() + "\n");
+		b.append("  ID: " + p.getUid() + "\n");
+		b.append("\n\n");
+		b.append("Taxes computed using the " + method + " method on " + form.getDate() + "\n");
+		b.append("\n\n");
+		b.append("Amount to pay: " + form.getAmount() + "\n");
+		b.append("\n");
+
+		return b.toString();
+	}
+
+}
@@ -0,0 +1,92 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.TaxComputationImpl;
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.utils.CircuitBreaker;
+import fr.unice.polytech.soa1.cookbook.flows.utils.LocalTaxComputation;
+import fr.unice.polytech.soa1.cookbook.flows.utils.RequestBuilder;
+import fr.unice.polytech.soa1.cookbook.flows.utils.TaxFormReader;
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.ws.Endpoint;
+import javax.xml.ws.spi.Provider;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one complex tax computation: in-JVM call (LocalTaxComputation) against the SOAP path of the
+ * routes (request built by RequestBuilder, HTTP on localhost, response read by TaxFormReader), the
+ * service being published by the JAX-WS implementation of the JDK in place of the container.
+ *
+ *   mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *       -Dexec.args="-cp %classpath org.openjdk.jmh.Main LocalTaxComputationBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1) // the JAX-WS stack is slow to warm up
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true") // no Nagle delay on the responses
+public class LocalTaxComputationBenchmark {
+
+	private static final String UUID = "C79D1004-A72D-1817-20B2-D0F69E787953";
+	private static final byte[] ENVELOPE_START = "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>".getBytes();
+	private static final byte[] ENVELOPE_END = "</soap:Body></soap:Envelope>".getBytes();
+
+	private final TaxComputationImpl service = new TaxComputationImpl();
+	private final LocalTaxComputation local = new LocalTaxComputation(service, new CircuitBreaker("tax computation", 5, 1000));
+	private final RequestBuilder builder = new RequestBuilder();
+	private final TaxFormReader reader = new TaxFormReader();
+	private final Person person = new Person();
+	private final byte[] drain = new byte[1024];
+	private Endpoint endpoint;
+	private URL url;
+
+	@Setup
+	public void setUp() throws Exception {
+		url = new URL("http://localhost:18181/TaxComputation");
+		// the JAX-WS implementation of the JDK, CXF (test classpath) having no HTTP server transport
+		Provider jdk = (Provider) Class.forName("com.sun.xml.internal.ws.spi.ProviderImpl").newInstance();
+		endpoint = jdk.createAndPublishEndpoint(url.toString(), service);
+		person.setIncome(43286);
+		person.setAssets(1936);
+		person.setZipCode(14666);
+	}
+
+	@TearDown
+	public void tearDown() {
+		endpoint.stop();
+	}
+
+	@Benchmark
+	public TaxForm local() throws Exception {
+		return local.complex(person, UUID);
+	}
+
+	@Benchmark
+	public TaxForm soap() throws Exception {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setDoOutput(true);
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", "text/xml; charset=utf-8");
+		connection.setRequestProperty("SOAPAction", "\"\"");
+		OutputStream out = connection.getOutputStream();
+		out.write(ENVELOPE_START);
+		out.write(builder.buildAdvancedRequest(person, UUID));
+		out.write(ENVELOPE_END);
+		out.close();
+		InputStream in = connection.getInputStream();
+		try {
+			return reader.readOne(new StreamSource(in));
+		} finally {
+			while (in.read(drain) >= 0) { } // the connection is kept alive once the response is consumed
+			in.close();
+		}
+	}
+
+}
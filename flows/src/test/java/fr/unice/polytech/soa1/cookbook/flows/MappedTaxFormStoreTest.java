@@ -0,0 +1,162 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.storage.MappedTaxFormStore;
+import junit.framework.TestCase;
+import org.junit.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+
+public class MappedTaxFormStoreTest extends TestCase {
+
+	private static final int SEGMENT_SIZE = 4096;
+
+	private File directory;
+
+	protected void setUp() {
+		directory = new File("target/mapped-store");
+		delete(directory);
+	}
+
+	protected void tearDown() {
+		delete(directory);
+	}
+
+	@Test
+	public void test_reopen() throws IOException {
+		MappedTaxFormStore store = open();
+		for(int i = 0; i < 200; i++) { store.put("uid-" + i, form(i)); } // several segments
+		store.put("uid-7", form(700));
+		store.put("no-date", new TaxForm());
+		store.flush();
+
+		store = open();
+		assertEquals(700.0, store.get("uid-7").getAmount());
+		assertEquals(199.0, store.get("uid-199").getAmount());
+		assertEquals("date-199", store.get("uid-199").getDate());
+		assertEquals(1199, store.get("uid-199").getEpoch());
+		assertNull(store.get("no-date").getDate());
+		assertNull(store.get("unknown"));
+		assertTrue(new File(directory, "taxforms-00001.log").exists());
+	}
+
+	// crash while a record was written: the record is dropped, and the next one is written in its place
+	@Test
+	public void test_truncated_record() throws IOException {
+		MappedTaxFormStore store = open();
+		store.put("uid-1", form(1));
+		store.put("uid-2", form(2));
+		store.flush();
+		int end = end();
+		RandomAccessFile segment = segment();
+		segment.seek(end);
+		segment.writeInt(100);       // a record of 100 bytes, only 10 of them written
+		segment.writeInt(0x12345678);
+		segment.write(new byte[10]);
+		segment.close();
+
+		assertRecovered(end);
+	}
+
+	// a record whose checksum does not match (e.g., torn write) ends the log
+	@Test
+	public void test_corrupted_record() throws IOException {
+		MappedTaxFormStore store = open();
+		store.put("uid-1", form(1));
+		store.put("uid-2", form(2));
+		int end = end();
+		store.put("uid-3", form(3));
+		store.flush();
+		RandomAccessFile segment = segment();
+		segment.seek(end + 8 + 2 + 5); // first byte of the amount of uid-3
+		segment.write(0x55);
+		segment.close();
+
+		assertRecovered(end);
+		assertNull(open().get("uid-3"));
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	// the records before `end` are indexed, the tail is zeroed, and the log continues from `end`
+	private void assertRecovered(int end) throws IOException {
+		MappedTaxFormStore store = open();
+		assertEquals(1.0, store.get("uid-1").getAmount());
+		assertEquals(2.0, store.get("uid-2").getAmount());
+		RandomAccessFile segment = segment();
+		segment.seek(end);
+		for(int k = end; k < SEGMENT_SIZE; k++) { assertEquals("byte " + k, 0, segment.read()); }
+		segment.close();
+
+		store.put("uid-4", form(4));
+		store.flush();
+		assertEquals(end, findRecord("uid-4"));
+		store = open();
+		assertEquals(4.0, store.get("uid-4").getAmount());
+		assertEquals(2.0, store.get("uid-2").getAmount());
+	}
+
+	private MappedTaxFormStore open() throws IOException {
+		return new MappedTaxFormStore(directory, SEGMENT_SIZE, 16);
+	}
+
+	private RandomAccessFile segment() throws IOException {
+		return new RandomAccessFile(new File(directory, "taxforms-00000.log"), "rw");
+	}
+
+	// position following the last record of the first segment
+	private int end() throws IOException {
+		RandomAccessFile segment = segment();
+		try {
+			int p = 0;
+			for(int length = segment.readInt(); length != 0; length = segment.readInt()) {
+				p += 8 + length;
+				segment.seek(p);
+			}
+			return p;
+		} finally {
+			segment.close();
+		}
+	}
+
+	// position of the record of a given uid in the first segment
+	private int findRecord(String uid) throws IOException {
+		RandomAccessFile segment = segment();
+		try {
+			int p = 0;
+			for(int length = segment.readInt(); length != 0; length = segment.readInt()) {
+				segment.readInt();
+				byte[] key = new byte[segment.readShort()];
+				segment.readFully(key);
+				if (uid.equals(new String(key, "UTF-8")))
+					return p;
+				p += 8 + length;
+				segment.seek(p);
+			}
+			return -1;
+		} finally {
+			segment.close();
+		}
+	}
+
+	private static TaxForm form(int i) {
+		TaxForm f = new TaxForm();
+		f.setAmount(i);
+		f.setDate("date-" + i);
+		f.setEpoch(1000 + i);
+		return f;
+	}
+
+	private static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null)
+			for(File c: children) { delete(c); }
+		f.delete();
+	}
+
+}
@@ -0,0 +1,262 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.metrics.ExchangeMetrics;
+import fr.unice.polytech.soa1.cookbook.flows.metrics.LatencyHistogram;
+import fr.unice.polytech.soa1.cookbook.flows.metrics.Metrics;
+import junit.framework.TestCase;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.model.ToDefinition;
+import org.apache.camel.util.AsyncProcessorHelper;
+import org.junit.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class MetricsTest extends TestCase {
+
+	@Test
+	public void test_percentiles() {
+		LatencyHistogram h = new LatencyHistogram();
+		for(int i = 1; i <= 1000; i++) { h.record(i * 1000L); } // 1..1000us
+		assertEquals(1000, h.getCount());
+		assertEquals(500.5, h.getMean(), 0.01);
+		assertEquals(1000, h.getMax());
+		assertEquals(1000, h.percentile(1.0));
+		assertTrue(Math.abs(h.percentile(0.5) - 500) <= 500 / 8);
+		assertTrue(Math.abs(h.percentile(0.99) - 990) <= 990 / 8);
+	}
+
+	@Test
+	public void test_small_values_are_exact() {
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.percentile(0.5));
+		h.record(3000);
+		assertEquals(3, h.percentile(0.5));
+	}
+
+	@Test
+	public void test_registry() {
+		assertSame(Metrics.histogram("test.latency"), Metrics.histogram("test.latency"));
+		Metrics.counter("test.counter").increment();
+		assertEquals(1, Metrics.counter("test.counter").sum());
+		assertTrue(Metrics.report().contains("test.counter: 1"));
+	}
+
+	// what recording adds to an exchange: a histogram record and a counter increment (notifier excluded)
+	@Test
+	public void test_recording_overhead() {
+		LatencyHistogram h = Metrics.histogram("test.overhead");
+		LongAdder c = Metrics.counter("test.overhead.count");
+		int count = 1000000;
+		for(int i = 0; i < count; i++) { h.record(i); c.increment(); } // warm-up
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long allocated = allocatedBytes(threads);
+		long start = System.nanoTime();
+		for(int i = 0; i < count; i++) { h.record(i * 37L); c.increment(); }
+		long perExchange = (System.nanoTime() - start) / count;
+		allocated = allocatedBytes(threads) - allocated;
+
+		assertTrue("overhead of " + perExchange + "ns per exchange", perExchange < 300);
+		if (allocated >= 0)
+			assertTrue(allocated + " bytes allocated while recording", allocated < 64 * 1024);
+	}
+
+	// a timer records once, and only when started on the same thread
+	@Test
+	public void test_timer() throws Exception {
+		Processor start = Metrics.startTimer("test.timer");
+		Processor stop = Metrics.stopTimer("test.timer");
+		stop.process(null);
+		assertEquals(0, Metrics.histogram("test.timer").getCount());
+		start.process(null);
+		stop.process(null);
+		stop.process(null);
+		assertEquals(1, Metrics.histogram("test.timer").getCount());
+	}
+
+	// what measuring adds to a send: two readings of the clock, a histogram record, and no allocation
+	@Test
+	public void test_send_overhead() throws Exception {
+		DefaultCamelContext context = new DefaultCamelContext();
+		AsyncProcessor target = new AsyncProcessor() {
+			public boolean process(Exchange exchange, AsyncCallback callback) {
+				callback.done(true);
+				return true;
+			}
+
+			public void process(Exchange exchange) throws Exception {
+				AsyncProcessorHelper.process(this, exchange);
+			}
+		};
+		AsyncProcessor send = (AsyncProcessor) new ExchangeMetrics()
+				.wrapProcessorInInterceptors(context, new ToDefinition("direct:overhead"), target, null);
+		Exchange exchange = new DefaultExchange(context);
+		AsyncCallback done = new AsyncCallback() {
+			public void done(boolean doneSync) { }
+		};
+		int count = 1000000;
+		for(int i = 0; i < count; i++) { send.process(exchange, done); target.process(exchange, done); } // warm-up
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long best = Long.MAX_VALUE;
+		long allocated = Long.MAX_VALUE;
+		for(int round = 0; round < 5; round++) {
+			long bytes = allocatedBytes(threads);
+			long start = System.nanoTime();
+			for(int i = 0; i < count; i++) { send.process(exchange, done); }
+			long measured = System.nanoTime() - start;
+			bytes = allocatedBytes(threads) - bytes;
+			start = System.nanoTime();
+			for(int i = 0; i < count; i++) { target.process(exchange, done); }
+			best = Math.min(best, (measured - (System.nanoTime() - start)) / count);
+			allocated = Math.min(allocated, bytes);
+		}
+
+		assertEquals(5 * count + count, Metrics.histogram("endpoint.direct://overhead").getCount());
+		assertTrue("overhead of " + best + "ns per send", best < 500);
+		if (allocated >= 0)
+			assertTrue(allocated + " bytes allocated by " + count + " sends", allocated < 1024);
+	}
+
+	// what measuring adds to an exchange going through a route calling two other routes: no allocation (the
+	// time taken is measured by test_send_overhead, the cost of the whole exchange varying with the JIT)
+	@Test
+	public void test_exchange_allocation() throws Exception {
+		DefaultCamelContext without = context(false);
+		DefaultCamelContext with = context(true);
+		try {
+			long[] withoutCost = { Long.MAX_VALUE, Long.MAX_VALUE };
+			long[] withCost = { Long.MAX_VALUE, Long.MAX_VALUE };
+			for(int round = 0; round < 10; round++) { // alternated, the first rounds being a warm-up
+				long[] a = exchangeCost(without);
+				long[] b = exchangeCost(with);
+				if (round >= 4) {
+					best(withoutCost, a);
+					best(withCost, b);
+				}
+			}
+			String costs = "per exchange: " + withoutCost[0] + "ns and " + withoutCost[1] + " bytes without the measures, "
+					+ withCost[0] + "ns and " + withCost[1] + " bytes with them";
+			assertEquals(costs, 10 * 20000, Metrics.histogram("endpoint.direct://letter").getCount());
+			if (withCost[1] >= 0)
+				assertTrue(costs, withCost[1] - withoutCost[1] <= 0);
+		} finally {
+			without.stop();
+			with.stop();
+		}
+	}
+
+	// sends are measured with a nanosecond clock, until the exchange is done (asynchronous steps included),
+	// and consumed routes (other than direct:) until the exchange is completed
+	@Test
+	public void test_measures() throws Exception {
+		DefaultCamelContext context = new DefaultCamelContext();
+		context.disableJMX();
+		ExchangeMetrics metrics = new ExchangeMetrics();
+		context.addInterceptStrategy(metrics);
+		context.addRoutePolicyFactory(metrics);
+		final CountDownLatch consumed = new CountDownLatch(1);
+		context.addRoutes(new RouteBuilder() {
+			@Override public void configure() throws Exception {
+				from("direct:measured").to("direct:fast").to("direct:async").to("seda:measured");
+				from("direct:fast").process(new Processor() {
+					public void process(Exchange exchange) throws Exception {
+						for(long end = System.nanoTime() + 200000; System.nanoTime() < end; ) { } // 200us
+					}
+				});
+				from("direct:async").threads(1).delay(20);
+				from("direct:failing").to("direct:failure");
+				from("direct:failure").throwException(new IllegalStateException("failed"));
+				from("seda:measured").delay(10).process(new Processor() {
+					public void process(Exchange exchange) throws Exception { consumed.countDown(); }
+				});
+			}
+		});
+		context.start();
+		try {
+			ProducerTemplate template = context.createProducerTemplate();
+			template.sendBody("direct:measured", "citizen");
+			template.send("direct:failing", context.getEndpoint("direct:failing").createExchange());
+			assertTrue(consumed.await(1, TimeUnit.MINUTES));
+			Thread.sleep(100); // the route policy records once the exchange is completed
+
+			LatencyHistogram fast = Metrics.histogram("endpoint.direct://fast");
+			assertEquals(1, fast.getCount());
+			assertTrue(fast.getMax() + "us", fast.getMax() >= 200 && fast.getMax() < 1000);
+			LatencyHistogram async = Metrics.histogram("endpoint.direct://async");
+			assertEquals(1, async.getCount());
+			assertTrue(async.getMax() + "us", async.getMax() >= 20000);
+			assertEquals(1, Metrics.histogram("endpoint.seda://measured").getCount());
+			assertEquals(1, Metrics.histogram("endpoint.direct://failure").getCount());
+			assertEquals(1, Metrics.counter("endpoint.direct://failure.failures").sum());
+			LatencyHistogram route = Metrics.histogram("route.seda://measured");
+			assertEquals(1, route.getCount());
+			assertTrue(route.getMax() + "us", route.getMax() >= 10000);
+			assertEquals(0, Metrics.histogram("route.direct://measured").getCount()); // measured by its senders
+		} finally {
+			context.stop();
+		}
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	// a route calling two other routes, measured by ExchangeMetrics or not
+	private static DefaultCamelContext context(boolean measured) throws Exception {
+		DefaultCamelContext context = new DefaultCamelContext();
+		context.disableJMX();
+		if (measured) { // as MetricsRoute does
+			ExchangeMetrics metrics = new ExchangeMetrics();
+			context.addInterceptStrategy(metrics);
+			context.addRoutePolicyFactory(metrics);
+		}
+		context.addRoutes(new RouteBuilder() {
+			@Override public void configure() throws Exception {
+				from("direct:citizen").to("direct:letter").to("direct:store");
+				from("direct:letter").setHeader("letter", constant(true));
+				from("direct:store").setHeader("store", constant(true));
+			}
+		});
+		context.start();
+		return context;
+	}
+
+	// time (ns) and bytes allocated (-1 if unknown) per exchange sent to the route
+	private static long[] exchangeCost(DefaultCamelContext context) {
+		ProducerTemplate template = context.createProducerTemplate();
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		int count = 20000;
+		long allocated = allocatedBytes(threads);
+		long start = System.nanoTime();
+		for(int i = 0; i < count; i++) { template.sendBody("direct:citizen", "citizen"); }
+		long time = (System.nanoTime() - start) / count;
+		allocated = (allocated < 0) ? -1 : (allocatedBytes(threads) - allocated) / count;
+		return new long[] { time, allocated };
+	}
+
+	private static void best(long[] best, long[] cost) {
+		best[0] = Math.min(best[0], cost[0]);
+		best[1] = Math.min(best[1], cost[1]);
+	}
+
+	// bytes allocated by the current thread, -1 if the JVM does not tell
+	private static long allocatedBytes(ThreadMXBean threads) {
+		if (threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+}
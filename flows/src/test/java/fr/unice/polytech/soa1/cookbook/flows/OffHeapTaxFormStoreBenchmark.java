@@ -0,0 +1,71 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.storage.MemoryTaxFormStore;
+import fr.unice.polytech.soa1.cookbook.flows.storage.OffHeapTaxFormStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up one tax form among 1,000,000 (random uids, known and unknown): the off-heap store against the
+ * heap store (MemoryTaxFormStore), both filled as by the routes (one date text per 100 forms).
+ *
+ *   mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *       -Dexec.args="-cp %classpath org.openjdk.jmh.Main OffHeapTaxFormStoreBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class OffHeapTaxFormStoreBenchmark {
+
+	private static final int FORMS = 1000000;
+	private static final int LOOKUPS = 1 << 16; // uids looked up in turn, 1 in 8 unknown
+
+	private final OffHeapTaxFormStore offHeap = new OffHeapTaxFormStore(FORMS);
+	private final MemoryTaxFormStore memory = new MemoryTaxFormStore();
+	private final String[] lookups = new String[LOOKUPS];
+	private int next = 0;
+
+	@Setup
+	public void setUp() {
+		String date = null;
+		for(int i = 0; i < FORMS; i++) {
+			if (i % 100 == 0)
+				date = "Sat Oct 17 23:" + (i / 6000 % 60) + ":" + (i / 100 % 60) + " CEST 2026";
+			TaxForm form = new TaxForm();
+			form.setAmount(i);
+			form.setDate(date);
+			form.setEpoch(1792279662000L + i * 10);
+			offHeap.put(uuid(i), form);
+			memory.put(uuid(i), form);
+		}
+		Random random = new Random(42);
+		for(int i = 0; i < LOOKUPS; i++) {
+			lookups[i] = uuid(i % 8 == 0 ? FORMS + i : random.nextInt(FORMS)); // new strings, as read from requests
+		}
+	}
+
+	@Benchmark
+	public TaxForm offHeap() {
+		return offHeap.get(lookups[next++ & (LOOKUPS - 1)]);
+	}
+
+	@Benchmark
+	public TaxForm memory() {
+		return memory.get(lookups[next++ & (LOOKUPS - 1)]);
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private static String uuid(int i) {
+		return String.format("C79D1004-A72D-1817-20B2-%012X", i);
+	}
+
+}
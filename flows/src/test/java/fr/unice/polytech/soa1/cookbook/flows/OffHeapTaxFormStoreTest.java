@@ -0,0 +1,152 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.storage.MemoryTaxFormStore;
+import fr.unice.polytech.soa1.cookbook.flows.storage.OffHeapTaxFormStore;
+import fr.unice.polytech.soa1.cookbook.flows.storage.TaxFormStore;
+import fr.unice.polytech.soa1.cookbook.flows.storage.UuidTaxFormStore;
+import junit.framework.TestCase;
+import org.junit.*;
+
+
+public class OffHeapTaxFormStoreTest extends TestCase {
+
+	private static final String ZERO = "00000000-0000-0000-0000-000000000000";
+
+	@Test
+	public void test_round_trip() {
+		OffHeapTaxFormStore store = new OffHeapTaxFormStore(16);
+		for(int i = 0; i < 1000; i++) { store.put(uuid(i), form(i, "Sat Oct 17 23:27:" + (i % 60) + " CEST 2026", i)); } // grows
+		store.put(uuid(7), form(700, "Sat Oct 17 23:27:42 CEST 2026", 0)); // replaced, epoch unknown
+		store.put(ZERO, form(1, null, 42));
+
+		TaxForm f = store.get(uuid(999));
+		assertEquals(999.0, f.getAmount());
+		assertEquals("Sat Oct 17 23:27:39 CEST 2026", f.getDate()); // same text, zone included
+		assertEquals(999, f.getEpoch());
+		f = store.get(uuid(7));
+		assertEquals(700.0, f.getAmount());
+		assertEquals("Sat Oct 17 23:27:42 CEST 2026", f.getDate());
+		assertEquals(0, f.getEpoch());
+		f = store.get(ZERO);
+		assertNull(f.getDate());
+		assertEquals(42, f.getEpoch());
+		assertNull(store.get(uuid(1000)));
+	}
+
+	// uids are case-sensitive, as in the other stores: a lower-case UUID is another uid, kept by the fallback
+	@Test
+	public void test_case_sensitive() {
+		OffHeapTaxFormStore store = new OffHeapTaxFormStore(16);
+		String upper = uuid(0xABC);
+		String lower = upper.toLowerCase();
+		store.put(upper, form(1, null, 0));
+		assertFalse(OffHeapTaxFormStore.isUuid(lower));
+		assertNull(store.get(lower));
+		try {
+			store.put(lower, form(2, null, 0));
+			fail("lower-case UUID accepted");
+		} catch (IllegalArgumentException e) { /* expected */ }
+
+		TaxFormStore fallback = new UuidTaxFormStore(store, new MemoryTaxFormStore());
+		fallback.put(lower, form(2, null, 0));
+		assertEquals(1.0, fallback.get(upper).getAmount());
+		assertEquals(2.0, fallback.get(lower).getAmount());
+		assertNull(fallback.get(upper.substring(0, 35) + "c")); // mixed case
+	}
+
+	// a date per form: the texts are kept off-heap, exact, and the heap kept by the store stays bounded
+	@Test
+	public void test_distinct_dates() {
+		int count = 200000;
+		long before = usedHeap();
+		OffHeapTaxFormStore store = new OffHeapTaxFormStore(count);
+		for(int i = 0; i < count; i++) { store.put(uuid(i), form(i, date(i), i)); }
+		long used = usedHeap() - before;
+
+		for(int i = 0; i < count; i += 997) { assertEquals(date(i), store.get(uuid(i)).getDate()); }
+		store.put(uuid(5), form(5, date(5), 5)); // no longer a recent date: appended again
+		assertEquals(date(5), store.get(uuid(5)).getDate());
+		assertTrue("heap: " + (used >> 10) + "KB", used < 1024 * 1024);
+	}
+
+	@Test
+	public void test_non_uuid() {
+		OffHeapTaxFormStore store = new OffHeapTaxFormStore(16);
+		assertNull(store.get("uid-1"));
+		try {
+			store.put("uid-1", form(1, null, 0));
+			fail("non-UUID uid accepted");
+		} catch (IllegalArgumentException e) { /* expected */ }
+
+		TaxFormStore fallback = new UuidTaxFormStore(store, new MemoryTaxFormStore());
+		fallback.put("uid-1", form(1, "date", 0));
+		fallback.put(uuid(2), form(2, "date", 0));
+		assertEquals(1.0, fallback.get("uid-1").getAmount());
+		assertEquals(2.0, fallback.get(uuid(2)).getAmount());
+		assertEquals(2.0, store.get(uuid(2)).getAmount());
+	}
+
+	// heap kept by the forms: the off-heap store only keeps the dictionary of the dates on the heap
+	@Test
+	public void test_footprint() {
+		int count = 200000;
+		String[] uids = new String[count];
+		for(int i = 0; i < count; i++) { uids[i] = uuid(i); }
+
+		long before = usedHeap();
+		TaxFormStore memory = new MemoryTaxFormStore();
+		fill(memory, uids);
+		long onHeap = usedHeap() - before;
+		assertEquals(1.0, memory.get(uids[1]).getAmount()); // still reachable when measured
+		memory = null;
+
+		before = usedHeap();
+		TaxFormStore offHeap = new OffHeapTaxFormStore(count);
+		fill(offHeap, uids);
+		long offHeapHeap = usedHeap() - before;
+
+		assertEquals(1.0, offHeap.get(uids[1]).getAmount());
+		assertTrue("heap: " + (onHeap >> 10) + "KB in memory, " + (offHeapHeap >> 10) + "KB off-heap",
+				offHeapHeap < onHeap / 20);
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	// forms computed at 100 forms per second (one date text per second, shared by its forms)
+	private static void fill(TaxFormStore store, String[] uids) {
+		String date = null;
+		for(int i = 0; i < uids.length; i++) {
+			if (i % 100 == 0)
+				date = "Sat Oct 17 " + (i / 360000) + ":" + (i / 6000 % 60) + ":" + (i / 100 % 60) + " CEST 2026";
+			store.put(new String(uids[i]), form(i, date, 1792279662000L + i * 10));
+		}
+	}
+
+	// a different date text for each i (one per second)
+	private static String date(int i) {
+		return "Sat Oct 17 2026 + " + i + "s, \u00e0 Paris";
+	}
+
+	private static TaxForm form(double amount, String date, long epoch) {
+		TaxForm f = new TaxForm();
+		f.setAmount(amount);
+		f.setDate(date);
+		f.setEpoch(epoch);
+		return f;
+	}
+
+	private static String uuid(int i) {
+		return String.format("C79D1004-A72D-1817-20B2-%012X", i);
+	}
+
+	// live objects only (after a full collection)
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
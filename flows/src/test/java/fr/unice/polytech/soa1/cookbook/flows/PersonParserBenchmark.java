@@ -0,0 +1,60 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.utils.PersonParser;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of transforming one CSV line into a Person: PersonParser against the previous Commons CSV record
+ * mapped by header name (what the CsvDataFormat of the route used to produce).
+ *
+ *   mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *       -Dexec.args="-cp %classpath org.openjdk.jmh.Main PersonParserBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersonParserBenchmark {
+
+	private static final String HEADER = "Navn,Fodselar,Postnummer,Postaddressen,Epost,Fodselsnummer,Inntekt,Formue";
+	private static final String LINE = "\"Collier, Tashya Y.\",1995,14666,\"P.O. Box 598, 1908 In Ave\","
+			+ "magna@luctussitamet.org,F6D8551C-F600-5125-3AFD-47860BB9A20A,\"43,286Kr\",\"1,936Kr\"";
+
+	private final PersonParser parser = new PersonParser();
+	private final CSVFormat format = CSVFormat.DEFAULT.withHeader(HEADER.split(","));
+
+	@Benchmark
+	public Person personParser() {
+		return parser.parse(LINE);
+	}
+
+	@Benchmark
+	public Person commonsCsv() throws IOException {
+		Map<String, String> data = CSVParser.parse(LINE, format).getRecords().get(0).toMap();
+		Person p = new Person();
+		String name = data.get("Navn");
+		p.setFirstName(name.split(",")[1].trim());
+		p.setLastName(name.split(",")[0].trim());
+		p.setZipCode(Integer.parseInt(data.get("Postnummer")));
+		p.setAddress(data.get("Postaddressen"));
+		p.setEmail(data.get("Epost"));
+		p.setUid(data.get("Fodselsnummer"));
+		p.setIncome(money(data.get("Inntekt")));
+		p.setAssets(money(data.get("Formue")));
+		return p;
+	}
+
+	private static int money(String raw) {
+		return Integer.parseInt(raw.replace(",", "").substring(0, raw.length() - 3));
+	}
+
+}
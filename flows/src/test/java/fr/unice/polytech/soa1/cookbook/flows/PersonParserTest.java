@@ -0,0 +1,64 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.utils.PersonParser;
+import junit.framework.TestCase;
+import org.junit.*;
+
+
+public class PersonParserTest extends TestCase {
+
+	private PersonParser parser = null;
+	protected void setUp() { this.parser = new PersonParser(); }
+
+	@Test
+	public void test_line() {
+		Person p = parser.parse("\"Collier, Tashya Y.\",1995,14666,\"P.O. Box 598, 1908 In Ave\","
+				+ "magna@luctussitamet.org,F6D8551C-F600-5125-3AFD-47860BB9A20A,\"43,286Kr\",\"-1,936Kr\"\r");
+		assertEquals("Collier", p.getLastName());
+		assertEquals("Tashya Y.", p.getFirstName());
+		assertEquals(14666, p.getZipCode());
+		assertEquals("P.O. Box 598, 1908 In Ave", p.getAddress());
+		assertEquals("magna@luctussitamet.org", p.getEmail());
+		assertEquals("F6D8551C-F600-5125-3AFD-47860BB9A20A", p.getUid());
+		assertEquals(43286, p.getIncome());
+		assertEquals(-1936, p.getAssets());
+	}
+
+	// zip codes are read as Integer.parseInt used to read them
+	@Test
+	public void test_zip_code_as_parseInt() {
+		for(String zip: new String[] { "69207", "-42", "+42", "007", "2147483647", "-2147483648" }) {
+			assertEquals(Integer.parseInt(zip), parser.parse(line(zip)).getZipCode());
+		}
+		for(String zip: new String[] { "", "-", "+", "4 2", "2147483648", "-2147483649", "1e3" }) {
+			try {
+				parser.parse(line(zip));
+				fail("zip code [" + zip + "] accepted");
+			} catch (NumberFormatException e) { /* as Integer.parseInt */ }
+		}
+	}
+
+	// money values out of the int range are rejected, as Integer.parseInt used to (no silent wrap around)
+	@Test
+	public void test_money_overflow() {
+		assertEquals(Integer.MAX_VALUE, parser.parse(line("42", "2,147,483,647Kr")).getIncome());
+		assertEquals(Integer.MIN_VALUE, parser.parse(line("42", "-2,147,483,648Kr")).getIncome());
+		for(String income: new String[] { "2,147,483,648Kr", "-2,147,483,649Kr", "99,999,999,999Kr" }) {
+			try {
+				parser.parse(line("42", income));
+				fail("income [" + income + "] accepted");
+			} catch (NumberFormatException e) { /* as Integer.parseInt */ }
+		}
+	}
+
+	private static String line(String zip) {
+		return line(zip, "11,889Kr");
+	}
+
+	private static String line(String zip, String income) {
+		return "\"Booker, Vernon E.\",1934," + zip + ",Ap #618-9302 Morbi Av.,ante@semperNam.net,"
+				+ "C79D1004-A72D-1817-20B2-D0F69E787953,\"" + income + "\",\"83,697Kr\"";
+	}
+
+}
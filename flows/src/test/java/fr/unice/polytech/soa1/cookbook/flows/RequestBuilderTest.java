@@ -0,0 +1,195 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.utils.RequestBuilder;
+import junit.framework.TestCase;
+import org.junit.*;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Requests encoded by RequestBuilder, against golden documents and against the previous String-based builder
+ * (kept below as previousXxx, its output encoded as UTF-8).
+ */
+public class RequestBuilderTest extends TestCase {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	// identifiers going through every branch of the UTF-8 encoding: 1 to 4 bytes, and an unpaired surrogate
+	private static final String[] IDENTIFIERS = { "C79D1004-A72D-1817-20B2-D0F69E787953", "",
+			"Zo\u00e9-M\u00fcller", "\u4e2d\u6587-ID", "emoji-\uD83D\uDE00", "broken-\uD83D", "tab\tand space" };
+
+	private RequestBuilder builder = null;
+	protected void setUp() { this.builder = new RequestBuilder(); }
+
+	// a simple request, byte for byte
+	@Test
+	public void test_golden_simple() {
+		assertBytes("<cook:simple xmlns:cook=\"http://cookbook.soa1.polytech.unice.fr/\">\n"
+				+ "  <simpleTaxInfo>\n"
+				+ "    <id>C79D1004-A72D-1817-20B2-D0F69E787953</id>\n"
+				+ "    <income>43286</income>\n"
+				+ "  </simpleTaxInfo>\n"
+				+ "</cook:simple>",
+				builder.buildSimpleRequest(person(43286, 1936, 14666), IDENTIFIERS[0]));
+	}
+
+	// an advanced (complex) request, byte for byte
+	@Test
+	public void test_golden_advanced() {
+		assertBytes("<cook:complex xmlns:cook=\"http://cookbook.soa1.polytech.unice.fr/\">\n"
+				+ "  <complexTaxInfo>\n"
+				+ "    <id>C79D1004-A72D-1817-20B2-D0F69E787953</id>\n"
+				+ "    <income>-12</income>\n"
+				+ "    <assets>0</assets>\n"
+				+ "    <zone>6000</zone>\n"
+				+ "  </complexTaxInfo>\n"
+				+ "</cook:complex>",
+				builder.buildAdvancedRequest(person(-12, 0, 6000), IDENTIFIERS[0]));
+	}
+
+	// batch requests of two persons, byte for byte
+	@Test
+	public void test_golden_batches() {
+		List<Person> persons = Arrays.asList(person(100, 20, 3), person(Integer.MAX_VALUE, Integer.MIN_VALUE, 4));
+		List<String> uuids = Arrays.asList("id-1", "id-2");
+		assertBytes("<cook:simpleBatch xmlns:cook=\"http://cookbook.soa1.polytech.unice.fr/\">\n"
+				+ "  <simpleTaxInfo>\n"
+				+ "    <id>id-1</id>\n"
+				+ "    <income>100</income>\n"
+				+ "  </simpleTaxInfo>\n"
+				+ "  <simpleTaxInfo>\n"
+				+ "    <id>id-2</id>\n"
+				+ "    <income>2147483647</income>\n"
+				+ "  </simpleTaxInfo>\n"
+				+ "</cook:simpleBatch>",
+				builder.buildSimpleBatchRequest(persons, uuids));
+		assertBytes("<cook:complexBatch xmlns:cook=\"http://cookbook.soa1.polytech.unice.fr/\">\n"
+				+ "  <complexTaxInfo>\n"
+				+ "    <id>id-1</id>\n"
+				+ "    <income>100</income>\n"
+				+ "    <assets>20</assets>\n"
+				+ "    <zone>3</zone>\n"
+				+ "  </complexTaxInfo>\n"
+				+ "  <complexTaxInfo>\n"
+				+ "    <id>id-2</id>\n"
+				+ "    <income>2147483647</income>\n"
+				+ "    <assets>-2147483648</assets>\n"
+				+ "    <zone>4</zone>\n"
+				+ "  </complexTaxInfo>\n"
+				+ "</cook:complexBatch>",
+				builder.buildAdvancedBatchRequest(persons, uuids));
+	}
+
+	// &, < and > in an identifier are escaped, non-ASCII characters are encoded as UTF-8
+	@Test
+	public void test_escaping() {
+		assertBytes("<cook:simple xmlns:cook=\"http://cookbook.soa1.polytech.unice.fr/\">\n"
+				+ "  <simpleTaxInfo>\n"
+				+ "    <id>R&amp;D &lt;Zo\u00e9&gt; \u4e2d \uD83D\uDE00</id>\n"
+				+ "    <income>1</income>\n"
+				+ "  </simpleTaxInfo>\n"
+				+ "</cook:simple>",
+				builder.buildSimpleRequest(person(1, 0, 0), "R&D <Zo\u00e9> \u4e2d \uD83D\uDE00"));
+		byte[] request = builder.buildAdvancedRequest(person(1, 2, 3), "a&b<c");
+		assertTrue(Arrays.equals(previousAdvanced(person(1, 2, 3), "a&amp;b&lt;c").getBytes(UTF_8), request));
+	}
+
+	// identical to the previous builder for any identifier without &, < or >, and any numbers
+	@Test
+	public void test_same_as_previous_builder() {
+		Random random = new Random(42);
+		for(int n = 0; n < 10000; n++) {
+			List<Person> persons = new ArrayList<Person>();
+			List<String> uuids = new ArrayList<String>();
+			for(int i = 0; i <= n % 4; i++) {
+				persons.add(person(random.nextInt(), random.nextInt(200000) - 100000, random.nextInt(100000)));
+				uuids.add(IDENTIFIERS[random.nextInt(IDENTIFIERS.length)]);
+			}
+			Person p = persons.get(0);
+			String uuid = uuids.get(0);
+			assertBytes(previousSimple(p, uuid), builder.buildSimpleRequest(p, uuid));
+			assertBytes(previousAdvanced(p, uuid), builder.buildAdvancedRequest(p, uuid));
+			assertBytes(previousSimpleBatch(persons, uuids), builder.buildSimpleBatchRequest(persons, uuids));
+			assertBytes(previousAdvancedBatch(persons, uuids), builder.buildAdvancedBatchRequest(persons, uuids));
+		}
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private static Person person(int income, int assets, int zipCode) {
+		Person p = new Person();
+		p.setIncome(income);
+		p.setAssets(assets);
+		p.setZipCode(zipCode);
+		return p;
+	}
+
+	private static void assertBytes(String expected, byte[] actual) {
+		byte[] bytes = expected.getBytes(UTF_8);
+		assertEquals(new String(bytes, UTF_8), new String(actual, UTF_8)); // readable message on failure
+		assertTrue(Arrays.equals(bytes, actual));
+	}
+
+	// The previous builder (String concatenation, sent as UTF-8)
+
+	private static String previousSimple(Person p, String uuid) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("<cook:simple xmlns:cook=\"http://cookbook.soa1.polytech.unice.fr/\">\n");
+		builder.append("  <simpleTaxInfo>\n");
+		builder.append("    <id>"     + uuid          + "</id>\n");
+		builder.append("    <income>" + p.getIncome() + "</income>\n");
+		builder.append("  </simpleTaxInfo>\n");
+		builder.append("</cook:simple>");
+		return builder.toString();
+	}
+
+	private static String previousAdvanced(Person p, String uuid) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("<cook:complex xmlns:cook=\"http://cookbook.soa1.polytech.unice.fr/\">\n");
+		builder.append("  <complexTaxInfo>\n");
+		builder.append("    <id>"     + uuid           + "</id>\n");
+		builder.append("    <income>" + p.getIncome()  + "</income>\n");
+		builder.append("    <assets>" + p.getAssets()  + "</assets>\n");
+		builder.append("    <zone>"   + p.getZipCode() + "</zone>\n");
+		builder.append("  </complexTaxInfo>\n");
+		builder.append("</cook:complex>");
+		return builder.toString();
+	}
+
+	private static String previousSimpleBatch(List<Person> persons, List<String> uuids) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("<cook:simpleBatch xmlns:cook=\"http://cookbook.soa1.polytech.unice.fr/\">\n");
+		for(int i = 0; i < persons.size(); i++) {
+			builder.append("  <simpleTaxInfo>\n");
+			builder.append("    <id>"     + uuids.get(i)              + "</id>\n");
+			builder.append("    <income>" + persons.get(i).getIncome() + "</income>\n");
+			builder.append("  </simpleTaxInfo>\n");
+		}
+		builder.append("</cook:simpleBatch>");
+		return builder.toString();
+	}
+
+	private static String previousAdvancedBatch(List<Person> persons, List<String> uuids) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("<cook:complexBatch xmlns:cook=\"http://cookbook.soa1.polytech.unice.fr/\">\n");
+		for(int i = 0; i < persons.size(); i++) {
+			Person p = persons.get(i);
+			builder.append("  <complexTaxInfo>\n");
+			builder.append("    <id>"     + uuids.get(i)   + "</id>\n");
+			builder.append("    <income>" + p.getIncome()  + "</income>\n");
+			builder.append("    <assets>" + p.getAssets()  + "</assets>\n");
+			builder.append("    <zone>"   + p.getZipCode() + "</zone>\n");
+			builder.append("  </complexTaxInfo>\n");
+		}
+		builder.append("</cook:complexBatch>");
+		return builder.toString();
+	}
+
+}
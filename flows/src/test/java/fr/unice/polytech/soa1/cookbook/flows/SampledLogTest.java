@@ -0,0 +1,137 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.utils.SampledLog;
+import junit.framework.TestCase;
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+import org.apache.camel.builder.SimpleBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.*;
+import org.slf4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sampled logs of three steps of a route (three call sites), the logger keeping the logged lines.
+ */
+public class SampledLogTest extends TestCase {
+
+	private final DefaultCamelContext context = new DefaultCamelContext();
+	private final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+	private final AtomicInteger evaluations = new AtomicInteger();
+	private boolean infoEnabled = true;
+
+	// 1 record out of 4 is logged, with all its lines, the second step being a branch taken by the odd records
+	@Test
+	public void test_per_record() throws Exception {
+		SampledLog[] steps = steps(4);
+		for(int i = 0; i < 100; i++) {
+			Exchange exchange = record(i);
+			steps[0].process(exchange);
+			if (i % 2 == 1)
+				steps[1].process(exchange);
+			steps[2].process(exchange);
+			assertNotNull(exchange.getProperty(SampledLog.SAMPLED));
+		}
+		Map<Integer, Integer> perRecord = new HashMap<Integer, Integer>();
+		for(String line: lines) {
+			int record = Integer.parseInt(line.substring("record-".length(), line.indexOf(' ')));
+			perRecord.put(record, perRecord.containsKey(record) ? perRecord.get(record) + 1 : 1);
+		}
+		assertEquals(25, perRecord.size());
+		for(Map.Entry<Integer, Integer> e: perRecord.entrySet()) {
+			assertEquals("record-" + e.getKey(), (e.getKey() % 2 == 1) ? 3 : 2, (int) e.getValue());
+		}
+		assertEquals(lines.size(), evaluations.get());
+	}
+
+	// the decision follows the exchange into its copies (e.g., branches of a multicast)
+	@Test
+	public void test_copies() throws Exception {
+		SampledLog[] steps = steps(2);
+		for(int i = 0; i < 10; i++) {
+			Exchange exchange = record(i);
+			steps[0].process(exchange);
+			Exchange copy = exchange.copy();
+			steps[1].process(copy);
+			assertNotNull(copy.getProperty(SampledLog.SAMPLED));
+			assertEquals(exchange.getProperty(SampledLog.SAMPLED), copy.getProperty(SampledLog.SAMPLED));
+		}
+		assertEquals(10, lines.size());
+	}
+
+	// rate 1: every record; rate 0: none; INFO disabled: none, the messages not being evaluated
+	@Test
+	public void test_rates() throws Exception {
+		handle(10, steps(1));
+		assertEquals(30, lines.size());
+		lines.clear();
+		handle(10, steps(0));
+		assertEquals(0, lines.size());
+		infoEnabled = false;
+		evaluations.set(0);
+		handle(10, steps(1));
+		assertEquals(0, lines.size());
+		assertEquals(0, evaluations.get());
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	// each record (an exchange whose body is "record-i") going through the steps
+	private void handle(int records, SampledLog[] steps) throws Exception {
+		for(int i = 0; i < records; i++) {
+			Exchange exchange = record(i);
+			for(SampledLog step: steps) { step.process(exchange); }
+		}
+	}
+
+	private Exchange record(int i) {
+		Exchange exchange = new DefaultExchange(context);
+		exchange.getIn().setBody("record-" + i);
+		return exchange;
+	}
+
+	// logs of three steps, "<record> step <n>"
+	private SampledLog[] steps(int rate) {
+		SampledLog[] steps = new SampledLog[3];
+		for(int i = 0; i < steps.length; i++) {
+			steps[i] = new SampledLog(logger(), counted(SimpleBuilder.simple("${body} step " + i)), rate);
+		}
+		return steps;
+	}
+
+	private Expression counted(final Expression expression) {
+		return new Expression() {
+			public <T> T evaluate(Exchange exchange, Class<T> type) {
+				evaluations.incrementAndGet();
+				return expression.evaluate(exchange, type);
+			}
+		};
+	}
+
+	// a logger keeping the lines logged at INFO level
+	private Logger logger() {
+		return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[] { Logger.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("isInfoEnabled"))
+							return infoEnabled;
+						if (method.getName().equals("info"))
+							lines.add((String) args[0]);
+						return method.getReturnType() == boolean.class ? false : null;
+					}
+				});
+	}
+
+}
@@ -0,0 +1,97 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.TaxEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the tax computation of a batch of rows: the columnar TaxEngine of the ws-soap module against the
+ * previous per-row computation of TaxComputationImpl (zone codes compared at each row, twice for the complex
+ * method), kept here for comparison. Response building is not included (see TimestampsBenchmark).
+ *
+ *   mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *       -Dexec.args="-cp %classpath org.openjdk.jmh.Main TaxEngineBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g") // 10M rows: about 250MB of columns
+public class TaxEngineBenchmark {
+
+	@Param({ "1000", "1000000", "10000000" })
+	private int rows;
+
+	private float[] income;
+	private float[] assets;
+	private String[] codes;
+	private byte[] zones;
+	private float[] amounts;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		String[] zipCodes = new String[1000]; // citizens share their zip codes, as in the CSV files
+		for(int i = 0; i < zipCodes.length; i++) { zipCodes[i] = String.valueOf(10000 + random.nextInt(90000)); }
+		income = new float[rows];
+		assets = new float[rows];
+		codes = new String[rows];
+		for(int i = 0; i < rows; i++) {
+			income[i] = random.nextInt(100000);
+			assets[i] = random.nextInt(50000);
+			codes[i] = zipCodes[random.nextInt(zipCodes.length)];
+		}
+		zones = TaxEngine.zoneClasses(codes);
+		amounts = new float[rows];
+	}
+
+	@Benchmark
+	public float[] simpleEngine() {
+		TaxEngine.simple(income, amounts, rows);
+		return amounts;
+	}
+
+	@Benchmark
+	public float[] simplePerRow() {
+		for(int i = 0; i < rows; i++) { amounts[i] = previousSimple(income[i]); }
+		return amounts;
+	}
+
+	// zone classes computed beforehand (as the columns are)
+	@Benchmark
+	public float[] complexEngine() {
+		TaxEngine.complex(income, assets, zones, amounts, rows);
+		return amounts;
+	}
+
+	// zone classes computed from the codes of the batch, as TaxComputationImpl.complexBatch does
+	@Benchmark
+	public float[] complexEngineWithZones() {
+		TaxEngine.complex(income, assets, TaxEngine.zoneClasses(codes), amounts, rows);
+		return amounts;
+	}
+
+	@Benchmark
+	public float[] complexPerRow() {
+		for(int i = 0; i < rows; i++) { amounts[i] = previousComplex(income[i], assets[i], codes[i]); }
+		return amounts;
+	}
+
+	/**
+	 * Previous computation of TaxComputationImpl (simpleTax, complexTax, computeIncome, computeAssets)
+	 */
+
+	private static float previousSimple(float income) {
+		return (float) (income * 0.2);
+	}
+
+	private static float previousComplex(float income, float assets, String code) {
+		float onIncome = income * (float) (!code.startsWith("1") ? 0.2 : 0.18 );
+		float onAssets = assets * (float) (!code.startsWith("1") ? 0.12 : 0.1 );
+		return onIncome + onAssets;
+	}
+
+}
@@ -0,0 +1,180 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import static fr.unice.polytech.soa1.cookbook.flows.utils.Settings.REST_BULK_MAX_SIZE;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.utils.BulkLookup;
+import fr.unice.polytech.soa1.cookbook.flows.utils.Database;
+import fr.unice.polytech.soa1.cookbook.flows.utils.HttpCaching;
+import junit.framework.TestCase;
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.model.RouteDefinition;
+import org.junit.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.UUID;
+
+/**
+ * The local routes behind the REST services of TaxFormAccessRoute, single and bulk lookups (the servlet and CXF
+ * consumers are not started: their components are not available outside of the container).
+ */
+public class TaxFormAccessRouteTest extends TestCase {
+
+	private static final long EPOCH = 1792279662000L; // Sat, 17 Oct 2026 23:27:42 GMT
+
+	private DefaultCamelContext context;
+	private ProducerTemplate template;
+	private String uid;
+	private String etag;
+
+	protected void setUp() throws Exception {
+		context = new DefaultCamelContext();
+		context.addComponent("activemq", context.getComponent("seda")); // no broker: queues consumed in memory
+		context.addRoutes(new TaxFormAccessRoute());
+		for(RouteDefinition route: new ArrayList<RouteDefinition>(context.getRouteDefinitions())) {
+			String from = route.getInputs().get(0).getUri();
+			if (from.startsWith("rest:") || from.startsWith("cxf:"))
+				context.removeRouteDefinition(route);
+		}
+		context.getRestDefinitions().clear();
+		context.start();
+		template = context.createProducerTemplate();
+
+		uid = UUID.randomUUID().toString().toUpperCase(); // the database may be kept on disk between runs
+		TaxForm form = new TaxForm();
+		form.setAmount(1234.5);
+		form.setDate("Sat Oct 17 23:27:42 UTC 2026");
+		form.setEpoch(EPOCH);
+		new Database().setData(uid, form);
+		etag = HttpCaching.etag(form);
+	}
+
+	protected void tearDown() throws Exception {
+		context.stop();
+	}
+
+	// known uid: the amount, with its validators
+	@Test
+	public void test_found() {
+		Exchange answer = get(uid, null, null);
+		assertNull(answer.getIn().getHeader(Exchange.HTTP_RESPONSE_CODE));
+		assertEquals("1234.5", answer.getIn().getBody(String.class));
+		assertEquals(etag, answer.getIn().getHeader("ETag"));
+		assertEquals("Sat, 17 Oct 2026 23:27:42 GMT", answer.getIn().getHeader("Last-Modified"));
+		assertEquals("private, max-age=60", answer.getIn().getHeader("Cache-Control"));
+	}
+
+	// unknown uid: 404 without body
+	@Test
+	public void test_not_found() {
+		Exchange answer = get(UUID.randomUUID().toString().toUpperCase(), null, null);
+		assertEquals(404, answer.getIn().getHeader(Exchange.HTTP_RESPONSE_CODE));
+		assertEquals("", answer.getIn().getBody(String.class));
+	}
+
+	// If-None-Match: single tag, list, weak tag and *; a 304 has no body but keeps the validators
+	@Test
+	public void test_if_none_match() {
+		assertNotModified(get(uid, etag, null));
+		assertNotModified(get(uid, "\"other\", " + etag, null));
+		assertNotModified(get(uid, "\"other\",W/" + etag, null));
+		assertNotModified(get(uid, "*", null));
+		assertModified(get(uid, "\"other\"", null));
+		assertModified(get(uid, etag.substring(0, etag.length() - 1), null)); // unterminated tag
+		assertEquals(etag, get(uid, etag, null).getIn().getHeader("ETag"));
+	}
+
+	// If-Modified-Since: only without If-None-Match, any of the three HTTP date formats
+	@Test
+	public void test_if_modified_since() {
+		assertNotModified(get(uid, null, "Sat, 17 Oct 2026 23:27:42 GMT"));
+		assertNotModified(get(uid, null, "Saturday, 17-Oct-26 23:27:42 GMT"));
+		assertNotModified(get(uid, null, "Sat Oct 17 23:27:42 2026"));
+		assertNotModified(get(uid, null, "Sun, 18 Oct 2026 00:00:00 GMT"));
+		assertModified(get(uid, null, "Sat, 17 Oct 2026 23:27:41 GMT"));
+		assertModified(get(uid, null, "yesterday"));
+		assertModified(get(uid, "\"other\"", "Sat, 17 Oct 2026 23:27:42 GMT")); // If-None-Match wins
+	}
+
+	// bulk lookup: one line per requested uid, in order, empty amount for the unknown ones (blank lines skipped)
+	@Test
+	public void test_bulk_mixed() throws Exception {
+		String unknown = UUID.randomUUID().toString().toUpperCase();
+		Exchange answer = bulk(uid + "\n\n" + unknown + "\r\n  " + uid + "  \n", null);
+		assertEquals(uid + ",1234.5\n" + unknown + ",\n" + uid + ",1234.5\n", answer.getIn().getBody(String.class));
+		assertEquals("text/plain", answer.getIn().getHeader(Exchange.CONTENT_TYPE));
+	}
+
+	// bulk lookup of no uid: empty response
+	@Test
+	public void test_bulk_empty() throws Exception {
+		assertEquals("", bulk("", null).getIn().getBody(String.class));
+		assertEquals("", bulk("\n \n", null).getIn().getBody(String.class));
+	}
+
+	// a request announcing more than REST_BULK_MAX_SIZE bytes is rejected before being read; a request
+	// without Content-Length stops being read at the limit
+	@Test
+	public void test_bulk_size_limit() throws Exception {
+		Exchange answer = bulk(uid, (long) REST_BULK_MAX_SIZE + 1);
+		assertEquals(413, answer.getIn().getHeader(Exchange.HTTP_RESPONSE_CODE));
+		assertEquals("", answer.getIn().getBody(String.class));
+		assertEquals(uid + ",1234.5\n", bulk(uid, (long) REST_BULK_MAX_SIZE).getIn().getBody(String.class));
+
+		StringBuilder uids = new StringBuilder();
+		for(int i = 0; i < 3; i++) { uids.append(uid).append('\n'); } // 111 bytes
+		BulkLookup lookup = new BulkLookup(new ByteArrayInputStream(uids.toString().getBytes("UTF-8")), new Database(), 80);
+		byte[] results = new byte[4096];
+		int size = 0;
+		try {
+			for(int n; (n = lookup.read(results, size, results.length - size)) >= 0; ) { size += n; }
+			fail("request larger than the limit read");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("80 bytes"));
+		}
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	// POST /taxForm/_bulk, the response (BulkLookup stream) being read entirely
+	private Exchange bulk(String uids, Long contentLength) throws Exception {
+		Exchange exchange = context.getEndpoint("direct:getTaxFormsFromREST").createExchange();
+		exchange.getIn().setBody(new ByteArrayInputStream(uids.getBytes("UTF-8")));
+		if (contentLength != null)
+			exchange.getIn().setHeader(Exchange.CONTENT_LENGTH, contentLength);
+		Exchange answer = template.send("direct:getTaxFormsFromREST", exchange);
+		assertNull(answer.getException());
+		answer.getIn().setBody(answer.getIn().getBody(String.class));
+		return answer;
+	}
+
+	// GET /taxForm/{uid}, with the given conditional headers (if not null)
+	private Exchange get(String uid, String ifNoneMatch, String ifModifiedSince) {
+		Exchange exchange = context.getEndpoint("direct:getTaxFormFromREST").createExchange();
+		exchange.getIn().setHeader("uid", uid);
+		if (ifNoneMatch != null)
+			exchange.getIn().setHeader("If-None-Match", ifNoneMatch);
+		if (ifModifiedSince != null)
+			exchange.getIn().setHeader("If-Modified-Since", ifModifiedSince);
+		Exchange answer = template.send("direct:getTaxFormFromREST", exchange);
+		assertNull(answer.getException());
+		return answer;
+	}
+
+	private static void assertNotModified(Exchange answer) {
+		assertEquals(304, answer.getIn().getHeader(Exchange.HTTP_RESPONSE_CODE));
+		assertEquals("", answer.getIn().getBody(String.class));
+	}
+
+	private static void assertModified(Exchange answer) {
+		assertNull(answer.getIn().getHeader(Exchange.HTTP_RESPONSE_CODE));
+		assertEquals("1234.5", answer.getIn().getBody(String.class));
+	}
+
+}
@@ -0,0 +1,68 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.utils.TaxFormReader;
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the tax form of a SOAP response: TaxFormReader against the two XPath evaluations used before
+ * (//amount/text() and //date/text()), on a DOM response and on a streamed one.
+ *
+ *   mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *       -Dexec.args="-cp %classpath org.openjdk.jmh.Main TaxFormReaderBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaxFormReaderBenchmark {
+
+	private static final String RESPONSE = "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+			+ "<soap:Body><ns2:simpleResponse xmlns:ns2=\"http://informatique.polytech.unice.fr/soa1/cookbook/\">"
+			+ "<simple_result><identifier>C79D1004-A72D-1817-20B2-D0F69E787953</identifier><amount>2377.8</amount>"
+			+ "<date>Sat Oct 17 23:27:42 UTC 2026</date><epoch>1792279662000</epoch></simple_result>"
+			+ "</ns2:simpleResponse></soap:Body></soap:Envelope>";
+
+	private final TaxFormReader reader = new TaxFormReader();
+	private final XPath xpath = XPathFactory.newInstance().newXPath();
+	private Document document;
+
+	@Setup
+	public void setUp() throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		document = factory.newDocumentBuilder().parse(new InputSource(new StringReader(RESPONSE)));
+	}
+
+	// the JDK XPath evaluates nodes, not sources (camel-saxon used to unwrap the DOMSource)
+	@Benchmark
+	public TaxForm xpathDom() throws Exception {
+		TaxForm result = new TaxForm();
+		result.setAmount(Double.parseDouble(xpath.evaluate("//amount/text()", document)));
+		result.setDate(xpath.evaluate("//date/text()", document));
+		return result;
+	}
+
+	@Benchmark
+	public TaxForm readerDom() throws Exception {
+		return reader.readOne(new DOMSource(document));
+	}
+
+	@Benchmark
+	public TaxForm readerStream() throws Exception {
+		return reader.readOne(new StreamSource(new StringReader(RESPONSE)));
+	}
+
+}
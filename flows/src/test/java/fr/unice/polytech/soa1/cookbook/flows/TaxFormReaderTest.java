@@ -0,0 +1,142 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.utils.TaxFormReader;
+import junit.framework.TestCase;
+import org.junit.*;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+public class TaxFormReaderTest extends TestCase {
+
+	private TaxFormReader reader = null;
+	protected void setUp() { this.reader = new TaxFormReader(); }
+
+	@Test
+	public void test_read_one() throws Exception {
+		for(boolean dom: new boolean[] { false, true }) {
+			TaxForm f = reader.readOne(source(response("simple", 42), dom));
+			assertEquals(42.5, f.getAmount());
+			assertEquals("Sat Oct 17 23:27:42 UTC 2026", f.getDate());
+			assertEquals(1792279662042L, f.getEpoch());
+		}
+	}
+
+	@Test
+	public void test_read_all() throws Exception {
+		for(boolean dom: new boolean[] { false, true }) {
+			Map<String, TaxForm> forms = reader.readAll(source(response("complex", 1, 2, 3), dom));
+			assertEquals(3, forms.size());
+			for(int i = 1; i <= 3; i++) { assertEquals(i + 0.5, forms.get("id-" + i).getAmount()); }
+		}
+	}
+
+	// one reader shared by concurrent routes: each response gives back its own tax form
+	@Test
+	public void test_concurrent_reads() throws Exception {
+		final int threads = 8;
+		final int responses = 2000;
+		final AtomicInteger wrong = new AtomicInteger();
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		final CountDownLatch done = new CountDownLatch(threads);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		for(int t = 0; t < threads; t++) {
+			final int thread = t;
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						for(int i = 0; i < responses; i++) {
+							int n = thread * responses + i;
+							TaxForm f = reader.readOne(source(response("simple", n), i % 2 == 0));
+							if (f.getAmount() != n + 0.5 || f.getEpoch() != 1792279662000L + n)
+								wrong.incrementAndGet();
+						}
+					} catch (Exception e) {
+						failure.set(e);
+					} finally {
+						done.countDown();
+					}
+				}
+			});
+		}
+		assertTrue("responses not read in time", done.await(1, TimeUnit.MINUTES));
+		pool.shutdown();
+		assertNull(failure.get());
+		assertEquals(0, wrong.get());
+	}
+
+	// an external entity is never resolved (XXE)
+	@Test
+	public void test_no_external_entity() throws Exception {
+		String response = externalEntityResponse();
+		try {
+			TaxForm f = reader.readOne(new StreamSource(new StringReader(response)));
+			assertFalse(String.valueOf(f.getDate()).contains("secret"));
+		} catch (Exception e) { /* rejected: fine as well */ }
+	}
+
+	// nor when the response is materialized as a DOM by the transformer (neither a stream nor a DOM source)
+	@Test
+	public void test_no_external_entity_through_transformer() throws Exception {
+		String response = externalEntityResponse();
+		try {
+			TaxForm f = reader.readOne(new SAXSource(new InputSource(new StringReader(response))));
+			assertFalse(String.valueOf(f.getDate()).contains("secret"));
+		} catch (Exception e) { /* rejected: fine as well */ }
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	// a SOAP response with one result per given number (amount: n.5, identifier: id-n)
+	private static String response(String method, int... numbers) {
+		StringBuilder xml = new StringBuilder("<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+				+ "<soap:Body><ns2:" + method + "Response xmlns:ns2=\"http://informatique.polytech.unice.fr/soa1/cookbook/\">");
+		for(int n: numbers) {
+			xml.append("<").append(method).append("_result>")
+					.append("<identifier>id-").append(n).append("</identifier>")
+					.append("<amount>").append(n).append(".5</amount>")
+					.append("<date>Sat Oct 17 23:27:42 UTC 2026</date>")
+					.append("<epoch>").append(1792279662000L + n).append("</epoch>")
+					.append("</").append(method).append("_result>");
+		}
+		return xml.append("</ns2:").append(method).append("Response></soap:Body></soap:Envelope>").toString();
+	}
+
+	// a single-result response whose date is an external entity referencing a local file containing "secret"
+	private static String externalEntityResponse() throws Exception {
+		File secret = File.createTempFile("secret", ".txt");
+		secret.deleteOnExit();
+		FileWriter out = new FileWriter(secret);
+		out.write("secret");
+		out.close();
+		return "<?xml version=\"1.0\"?><!DOCTYPE r [<!ENTITY xxe SYSTEM \"" + secret.toURI() + "\">]>"
+				+ "<simple_result><identifier>id</identifier><amount>1.0</amount><date>&xxe;</date></simple_result>";
+	}
+
+	private static Source source(String xml, boolean dom) throws Exception {
+		if (!dom)
+			return new StreamSource(new StringReader(xml));
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		return new DOMSource(factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml))));
+	}
+
+}
@@ -0,0 +1,133 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.flows.business.Person;
+import fr.unice.polytech.soa1.cookbook.flows.business.TaxForm;
+import fr.unice.polytech.soa1.cookbook.flows.utils.PartnerException;
+import fr.unice.polytech.soa1.cookbook.flows.utils.TaxRequestBatcher;
+import junit.framework.TestCase;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The batcher in front of a stub partner answering an amount equal to the income of each person.
+ */
+public class TaxRequestBatcherTest extends TestCase {
+
+	private ScheduledExecutorService timer;
+	private ExecutorService callers;
+
+	private final List<List<String>> batches = new ArrayList<List<String>>();
+	private final Map<String, TaxForm> forms = new ConcurrentHashMap<String, TaxForm>();
+	private final Map<String, Exception> failures = new ConcurrentHashMap<String, Exception>();
+
+	protected void setUp() {
+		timer = Executors.newSingleThreadScheduledExecutor();
+		callers = Executors.newCachedThreadPool();
+	}
+
+	protected void tearDown() {
+		timer.shutdownNow();
+		callers.shutdownNow();
+	}
+
+	// a full batch is sent at once, the remaining requests after the batch timeout
+	@Test
+	public void test_batches() throws Exception {
+		TaxRequestBatcher batcher = new TaxRequestBatcher(3, 50, 10000, partner(null), timer, callers);
+		CountDownLatch done = submit(batcher, 4);
+		assertTrue("results not received in time", done.await(1, TimeUnit.MINUTES));
+		assertEquals(2, batches.size());
+		assertEquals(3, batches.get(0).size());
+		assertEquals(1, batches.get(1).size());
+		for(int i = 0; i < 4; i++) { assertEquals((double) i, forms.get("uid-" + i).getAmount()); }
+		assertTrue(failures.isEmpty());
+	}
+
+	// a batch waiting for the partner longer than the result timeout is not expired before being sent
+	@Test
+	public void test_expiry_after_slot() throws Exception {
+		CountDownLatch slot = new CountDownLatch(1);
+		TaxRequestBatcher batcher = new TaxRequestBatcher(2, 10000, 100, partner(slot), timer, callers);
+		CountDownLatch done = submit(batcher, 2);
+		Thread.sleep(300); // three result timeouts without a slot
+		assertEquals(2, done.getCount());
+		slot.countDown();
+		assertTrue("results not received in time", done.await(1, TimeUnit.MINUTES));
+		assertTrue(failures.toString(), failures.isEmpty());
+		assertEquals(1.0, forms.get("uid-1").getAmount());
+	}
+
+	// a partner not answering: the requests are failed as partner failures (retried later by HandleACitizen)
+	@Test
+	public void test_hanging_partner() throws Exception {
+		CountDownLatch answer = new CountDownLatch(1);
+		TaxRequestBatcher batcher = new TaxRequestBatcher(2, 10000, 100, partner(null, answer), timer, callers);
+		CountDownLatch done = submit(batcher, 2);
+		assertTrue("requests not expired in time", done.await(1, TimeUnit.MINUTES));
+		answer.countDown();
+		assertTrue(forms.isEmpty());
+		assertEquals(2, failures.size());
+		for(Exception e: failures.values()) { assertTrue(e.toString(), e instanceof PartnerException); }
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private TaxRequestBatcher.Partner partner(CountDownLatch slot) {
+		return partner(slot, null);
+	}
+
+	// a partner waiting for the given slot (if any) before sending the batch, then for the answer (if any)
+	private TaxRequestBatcher.Partner partner(final CountDownLatch slot, final CountDownLatch answer) {
+		return new TaxRequestBatcher.Partner() {
+			public Map<String, TaxForm> compute(List<Person> persons, List<String> uuids, Runnable sending)
+					throws Exception {
+				if (slot != null)
+					slot.await();
+				sending.run();
+				if (answer != null)
+					answer.await();
+				synchronized (batches) { batches.add(uuids); }
+				Map<String, TaxForm> results = new HashMap<String, TaxForm>();
+				for(int i = 0; i < persons.size(); i++) {
+					TaxForm f = new TaxForm();
+					f.setAmount(persons.get(i).getIncome());
+					results.put(uuids.get(i), f);
+				}
+				return results;
+			}
+		};
+	}
+
+	// submits `count` persons (uid-i, income i), the latch counting down their outcomes
+	private CountDownLatch submit(TaxRequestBatcher batcher, int count) {
+		final CountDownLatch done = new CountDownLatch(count);
+		for(int i = 0; i < count; i++) {
+			final String uid = "uid-" + i;
+			Person p = new Person();
+			p.setIncome(i);
+			batcher.submit(p, uid, new TaxRequestBatcher.Callback() {
+				public void done(TaxForm form, Exception failure) {
+					if (failure != null)
+						failures.put(uid, failure);
+					else
+						forms.put(uid, form);
+					done.countDown();
+				}
+			});
+		}
+		return done;
+	}
+
+}
@@ -0,0 +1,69 @@
+package fr.unice.polytech.soa1.cookbook.flows;
+
+import fr.unice.polytech.soa1.cookbook.TaxComputationImpl;
+import fr.unice.polytech.soa1.cookbook.Timestamps;
+import fr.unice.polytech.soa1.cookbook.data.SimpleTaxRequest;
+import fr.unice.polytech.soa1.cookbook.data.TaxComputation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the response of the tax computation service: the current TaxComputationImpl (date formatted
+ * by Timestamps, once per second, and epoch) against the previous response building (new Date().toString() for
+ * each response), kept here for comparison. The date alone is measured as well.
+ *
+ *   mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *       -Dexec.args="-cp %classpath org.openjdk.jmh.Main TimestampsBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimestampsBenchmark {
+
+	private final TaxComputationImpl service = new TaxComputationImpl();
+	private final SimpleTaxRequest request = new SimpleTaxRequest();
+
+	@Setup
+	public void setUp() {
+		request.setIdentifier("C79D1004-A72D-1817-20B2-D0F69E787953");
+		request.setIncome(43286);
+	}
+
+	@Benchmark
+	public TaxComputation responseAfter() {
+		return service.simple(request);
+	}
+
+	@Benchmark
+	public TaxComputation responseBefore() {
+		return previousSimple(request);
+	}
+
+	@Benchmark
+	public String dateAfter() {
+		return Timestamps.format(System.currentTimeMillis());
+	}
+
+	@Benchmark
+	public String dateBefore() {
+		return new Date().toString();
+	}
+
+	/**
+	 * Previous response building of TaxComputationImpl (simpleTax, buildResponse)
+	 */
+
+	private static TaxComputation previousSimple(SimpleTaxRequest request) {
+		TaxComputation result = new TaxComputation();
+		result.setIdentifier(request.getIdentifier());
+		result.setDate(new Date().toString());
+		result.setAmount((float) (request.getIncome() * 0.2));
+		return result;
+	}
+
+}
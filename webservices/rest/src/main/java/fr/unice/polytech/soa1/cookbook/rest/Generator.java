@@ -1,19 +1,32 @@
 package fr.unice.polytech.soa1.cookbook.rest;
 
 
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identifier generator (name + counter), safe to use from concurrent requests: an identifier is never
+ * delivered twice.
+ */
 public class Generator {
 
 	private String name;
 
-	private int cpt = 0;
+	private final AtomicLong cpt = new AtomicLong(0);
 
 	public Generator(String s) {
 		this.name = s;
 	}
 
 	public String run() {
-		cpt++;
-		return name+cpt;
+		return name + cpt.incrementAndGet();
+	}
+
+	// Reserve count contiguous identifiers at once, returning the first counter value of the block
+	// (identifiers are name+first, ..., name+(first+count-1))
+	public long reserve(int count) {
+		if (count < 1)
+			throw new IllegalArgumentException("Cannot reserve " + count + " identifiers");
+		return cpt.getAndAdd(count) + 1;
 	}
 
 
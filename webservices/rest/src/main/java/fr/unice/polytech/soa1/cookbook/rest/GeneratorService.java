@@ -13,15 +13,16 @@ import java.util.Collection;
 @Produces(MediaType.APPLICATION_JSON)
 public class GeneratorService {
 
+	private static final int MAX_BLOCK_SIZE = 10000;
+
 	@POST
 	@Consumes(MediaType.TEXT_PLAIN)
 	public Response createNewGenerator(String name) {
-	    if(Storage.read(name) != null) {
+	    if(!Storage.create(name)) {
 			return Response.status(Response.Status.CONFLICT)
 					       .entity("\"Existing name " + name + "\"")
 					       .build();
 		}
-		Storage.create(name);
 		return Response.ok().build();
 	}
 
@@ -38,12 +39,27 @@ public class GeneratorService {
 
 	@Path("/{name}")
 	@GET
-	public Response generateIdentifier(@PathParam("name") String name) {
-		if(Storage.read(name) == null) {
+	public Response generateIdentifier(@PathParam("name") String name, @QueryParam("count") Integer count) {
+		Generator generator = Storage.read(name);
+		if(generator == null) {
 			return Response.status(Response.Status.NOT_FOUND).build();
 		}
-		String value = Storage.read(name).run();
-		return Response.ok().entity("\""+value+"\"").build();
+		if(count == null) {
+			String value = generator.run();
+			return Response.ok().entity("\""+value+"\"").build();
+		}
+		// ?count=N: a block of N identifiers, reserved in one step and returned as an array
+		if(count < 1 || count > MAX_BLOCK_SIZE) {
+			return Response.status(Response.Status.BAD_REQUEST)
+					       .entity("\"count must be in [1," + MAX_BLOCK_SIZE + "]\"")
+					       .build();
+		}
+		long first = generator.reserve(count);
+		JSONArray result = new JSONArray();
+		for(long i = first; i < first + count; i++) {
+			result.put(name + i);
+		}
+		return Response.ok().entity(result.toString()).build();
 	}
 
 	@Path("/{name}")
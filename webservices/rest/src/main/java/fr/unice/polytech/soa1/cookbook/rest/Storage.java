@@ -2,15 +2,17 @@ package fr.unice.polytech.soa1.cookbook.rest;
 
 
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class Storage {
 
-	// this mocks a database.
-	private static HashMap<String, Generator> contents = new HashMap<String, Generator>();
+	// this mocks a database (accessed by concurrent requests).
+	private static ConcurrentMap<String, Generator> contents = new ConcurrentHashMap<String, Generator>();
 
-	public static void create(String name) {
-		contents.put(name, new Generator(name));
+	// returns false if a generator already exists with the same name
+	public static boolean create(String name) {
+		return contents.putIfAbsent(name, new Generator(name)) == null;
 	}
 
 	public static Generator read(String name) {
@@ -0,0 +1,73 @@
+package fr.unice.polytech.soa1.cookbook.rest;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Identifiers delivered by one generator shared by 8 threads: Generator (AtomicLong) against a counter
+ * guarded by the generator monitor, for single identifiers (run) and blocks of 100 (reserve).
+ *
+ *   mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *       -Dexec.args="-cp %classpath org.openjdk.jmh.Main GeneratorBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class GeneratorBenchmark {
+
+	private static final int BLOCK = 100;
+
+	private final Generator atomic = new Generator("gen");
+	private final SynchronizedGenerator synchronizedGenerator = new SynchronizedGenerator("gen");
+
+	@Benchmark
+	public String atomicRun() {
+		return atomic.run();
+	}
+
+	@Benchmark
+	public String synchronizedRun() {
+		return synchronizedGenerator.run();
+	}
+
+	@Benchmark
+	public long atomicReserve() {
+		return atomic.reserve(BLOCK);
+	}
+
+	@Benchmark
+	public long synchronizedReserve() {
+		return synchronizedGenerator.reserve(BLOCK);
+	}
+
+	// the previous int counter, made thread-safe with the monitor of the generator
+	private static class SynchronizedGenerator {
+
+		private final String name;
+		private long cpt = 0;
+
+		SynchronizedGenerator(String s) {
+			this.name = s;
+		}
+
+		synchronized String run() {
+			cpt++;
+			return name + cpt;
+		}
+
+		synchronized long reserve(int count) {
+			if (count < 1)
+				throw new IllegalArgumentException("Cannot reserve " + count + " identifiers");
+			long first = cpt + 1;
+			cpt += count;
+			return first;
+		}
+
+	}
+
+}
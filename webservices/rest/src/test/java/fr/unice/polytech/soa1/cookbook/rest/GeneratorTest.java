@@ -0,0 +1,99 @@
+package fr.unice.polytech.soa1.cookbook.rest;
+
+import junit.framework.TestCase;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+public class GeneratorTest extends TestCase {
+
+	private static final int THREADS = 64;
+	private static final int CALLS_PER_THREAD = 50000; // 3.2M identifiers
+
+	private Generator generator = null;
+	protected void setUp() { this.generator = new Generator("gen"); }
+
+	@Test
+	public void test_sequential_identifiers() {
+		assertEquals("gen1", generator.run());
+		assertEquals("gen2", generator.run());
+		assertEquals(3, generator.reserve(10));
+		assertEquals("gen13", generator.run());
+	}
+
+	@Test
+	public void test_invalid_reservation() {
+		try {
+			generator.reserve(0);
+			fail("Reserving 0 identifiers must be rejected");
+		} catch (IllegalArgumentException e) { /* expected */ }
+	}
+
+	@Test
+	public void test_concurrent_identifiers_are_unique() throws Exception {
+		List<long[]> produced = runConcurrently(new Task() {
+			public long next() { return Long.parseLong(generator.run().substring(3)); }
+		});
+		BitSet seen = new BitSet();
+		for(long[] values: produced) {
+			for(long v: values) {
+				assertFalse("Duplicated identifier gen" + v, seen.get((int) v));
+				seen.set((int) v);
+			}
+		}
+		assertEquals(THREADS * CALLS_PER_THREAD, seen.cardinality());
+	}
+
+	@Test
+	public void test_concurrent_blocks_do_not_overlap() throws Exception {
+		final int blockSize = 7;
+		List<long[]> produced = runConcurrently(new Task() {
+			public long next() { return generator.reserve(blockSize); }
+		});
+		BitSet seen = new BitSet();
+		for(long[] firsts: produced) {
+			for(long first: firsts) {
+				for(long v = first; v < first + blockSize; v++) {
+					assertFalse("Identifier gen" + v + " reserved twice", seen.get((int) v));
+					seen.set((int) v);
+				}
+			}
+		}
+		assertEquals(THREADS * CALLS_PER_THREAD * blockSize, seen.cardinality());
+	}
+
+	/**
+	 * Private helpers
+	 */
+
+	private interface Task { long next(); }
+
+	// runs the task CALLS_PER_THREAD times in each thread, all threads starting together
+	private List<long[]> runConcurrently(final Task task) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<long[]>> futures = new ArrayList<Future<long[]>>();
+			for(int t = 0; t < THREADS; t++) {
+				futures.add(pool.submit(new Callable<long[]>() {
+					public long[] call() {
+						long[] values = new long[CALLS_PER_THREAD];
+						for(int i = 0; i < CALLS_PER_THREAD; i++) { values[i] = task.next(); }
+						return values;
+					}
+				}));
+			}
+			List<long[]> result = new ArrayList<long[]>();
+			for(Future<long[]> f: futures) { result.add(f.get()); }
+			return result;
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -3,7 +3,8 @@ package fr.unice.polytech.soa1.cookbook;
 import fr.unice.polytech.soa1.cookbook.data.*;
 
 import javax.jws.WebService;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.List;
 
 
 @WebService(targetNamespace   = "http://informatique.polytech.unice.fr/soa1/cookbook/",
@@ -12,22 +13,74 @@ import java.util.Date;
 		    endpointInterface = "fr.unice.polytech.soa1.cookbook.TaxComputationService")
 public class TaxComputationImpl implements TaxComputationService {
 
+	// Simulated processing time (ms) of each call, to observe the flows against a slow partner
+	private static final int LATENCY = Integer.getInteger("taxcomputation.latency", 0);
+
 	public TaxComputation simple(SimpleTaxRequest request) {
+		simulateLatency();
+		return simpleTax(request);
+	}
+
+	public TaxComputation complex(AdvancedTaxRequest request) {
+		simulateLatency();
+		return complexTax(request);
+	}
+
+	public List<TaxComputation> simpleBatch(List<SimpleTaxRequest> requests) {
+		simulateLatency();
+		int count = requests.size();
+		float[] income = new float[count];
+		for(int i = 0; i < count; i++) {
+			income[i] = requests.get(i).getIncome();
+		}
+		float[] amounts = new float[count];
+		TaxEngine.simple(income, amounts, count);
+		return buildResponses(requests, amounts);
+	}
+
+	public List<TaxComputation> complexBatch(List<AdvancedTaxRequest> requests) {
+		simulateLatency();
+		int count = requests.size();
+		float[] income = new float[count];
+		float[] assets = new float[count];
+		byte[] zones = new byte[count];
+		for(int i = 0; i < count; i++) {
+			AdvancedTaxRequest request = requests.get(i);
+			income[i] = request.getIncome();
+			assets[i] = request.getAssets();
+			zones[i] = TaxEngine.zoneClass(request.getZone());
+		}
+		float[] amounts = new float[count];
+		TaxEngine.complex(income, assets, zones, amounts, count);
+		return buildResponses(requests, amounts);
+	}
+
+	private TaxComputation simpleTax(SimpleTaxRequest request) {
 		float amount = (float) (request.getIncome() * 0.2);
 		return buildResponse(request.getIdentifier(), amount);
 	}
 
-	public TaxComputation complex(AdvancedTaxRequest request) {
+	private TaxComputation complexTax(AdvancedTaxRequest request) {
 		float onIncome = computeIncome(request.getIncome(), request.getZone());
 		float onAssets = computeAssets(request.getAssets(), request.getZone());
 		float amount = onIncome + onAssets;
 		return buildResponse(request.getIdentifier(), amount);
 	}
 
+	private List<TaxComputation> buildResponses(List<? extends SimpleTaxRequest> requests, float[] amounts) {
+		List<TaxComputation> results = new ArrayList<TaxComputation>(requests.size());
+		for(int i = 0; i < amounts.length; i++) {
+			results.add(buildResponse(requests.get(i).getIdentifier(), amounts[i]));
+		}
+		return results;
+	}
+
 	private TaxComputation buildResponse(String id, float amount) {
 		TaxComputation result = new TaxComputation();
 		result.setIdentifier(id);
-		result.setDate(new Date().toString());
+		long now = System.currentTimeMillis();
+		result.setEpoch(now);
+		result.setDate(Timestamps.format(now));
 		result.setAmount(amount);
 		return result;
 	}
@@ -46,4 +99,14 @@ public class TaxComputationImpl implements TaxComputationService {
 		return a * coeff;
 	}
 
+	private void simulateLatency() {
+		if (LATENCY <= 0)
+			return;
+		try {
+			Thread.sleep(LATENCY);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 }
@@ -7,6 +7,8 @@ import javax.jws.WebService;
 
 import fr.unice.polytech.soa1.cookbook.data.*;
 
+import java.util.List;
+
 @WebService(name="TaxComputation")
 public interface TaxComputationService {
 
@@ -17,5 +19,13 @@ public interface TaxComputationService {
 	@WebResult(name="complex_result")
 	TaxComputation complex(@WebParam(name="complexTaxInfo") AdvancedTaxRequest request);
 
+	// Batch operations: many requests in a single envelope, results are given in the same order
+
+	@WebResult(name="simple_result")
+	List<TaxComputation> simpleBatch(@WebParam(name="simpleTaxInfo") List<SimpleTaxRequest> requests);
+
+	@WebResult(name="complex_result")
+	List<TaxComputation> complexBatch(@WebParam(name="complexTaxInfo") List<AdvancedTaxRequest> requests);
+
 }
 
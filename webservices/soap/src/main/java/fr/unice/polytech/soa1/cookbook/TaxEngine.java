@@ -0,0 +1,44 @@
+package fr.unice.polytech.soa1.cookbook;
+
+/**
+ * Batch tax computation on columnar inputs: row i is described by income[i] (and assets[i], zones[i] for
+ * the advanced method), its amount is stored in amounts[i]. Computations are done in a loop without any
+ * allocation nor string comparison, zone codes being classified once (see zoneClass).
+ *
+ * Amounts are bit-identical to the ones computed by TaxComputationImpl (same float operations).
+ **/
+public final class TaxEngine {
+
+	public static final byte URBAN       = 0;
+	public static final byte COUNTRYSIDE = 1; // zone codes starting with "1"
+
+	// Rates indexed by zone class
+	private static final float[] INCOME_RATE = { (float) 0.2,  (float) 0.18 };
+	private static final float[] ASSETS_RATE = { (float) 0.12, (float) 0.1  };
+
+	public static byte zoneClass(String code) {
+		return code.startsWith("1") ? COUNTRYSIDE : URBAN;
+	}
+
+	public static byte[] zoneClasses(String[] codes) {
+		byte[] classes = new byte[codes.length];
+		for(int i = 0; i < codes.length; i++) { classes[i] = zoneClass(codes[i]); }
+		return classes;
+	}
+
+	// Simple method: 20% of the income
+	public static void simple(float[] income, float[] amounts, int count) {
+		for(int i = 0; i < count; i++) {
+			amounts[i] = (float) (income[i] * 0.2);
+		}
+	}
+
+	// Advanced method: income and assets taxed according to the zone class
+	public static void complex(float[] income, float[] assets, byte[] zones, float[] amounts, int count) {
+		for(int i = 0; i < count; i++) {
+			int zone = zones[i];
+			amounts[i] = income[i] * INCOME_RATE[zone] + assets[i] * ASSETS_RATE[zone];
+		}
+	}
+
+}
@@ -0,0 +1,36 @@
+package fr.unice.polytech.soa1.cookbook;
+
+import java.util.Date;
+
+/**
+ * Human-readable form of the response dates (Date.toString() format, with a precision of one second), formatted
+ * at most once per second: responses built during the same second share the same text.
+ **/
+public final class Timestamps {
+
+	private static volatile Stamp last = new Stamp(Long.MIN_VALUE, null);
+
+	private Timestamps() { }
+
+	public static String format(long epoch) {
+		long second = Math.floorDiv(epoch, 1000L);
+		Stamp stamp = last;
+		if (stamp.second != second) {
+			stamp = new Stamp(second, new Date(epoch).toString());
+			last = stamp;
+		}
+		return stamp.text;
+	}
+
+	// A second, and its textual form (published as a whole, read without lock)
+	private static final class Stamp {
+		private final long second;
+		private final String text;
+
+		Stamp(long second, String text) {
+			this.second = second;
+			this.text = text;
+		}
+	}
+
+}
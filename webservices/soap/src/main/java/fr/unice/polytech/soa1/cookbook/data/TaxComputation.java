@@ -7,6 +7,7 @@ import javax.xml.bind.annotation.XmlType;
 public class TaxComputation {
 
 	private String date;
+	private long epoch;
 	private float amount;
 	private String identifier;
 
@@ -14,6 +15,11 @@ public class TaxComputation {
 	public String getDate() { return date; }
 	public void setDate(String date) { this.date = date; }
 
+	// Same date, in milliseconds since 1970-01-01T00:00:00Z
+	@XmlElement
+	public long getEpoch() { return epoch; }
+	public void setEpoch(long epoch) { this.epoch = epoch; }
+
 	@XmlElement
 	public float getAmount() { return amount; }
 	public void setAmount(float amount) { this.amount = amount; }
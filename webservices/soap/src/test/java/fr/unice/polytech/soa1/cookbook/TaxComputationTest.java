@@ -3,6 +3,10 @@ package fr.unice.polytech.soa1.cookbook;
 import junit.framework.TestCase;
 import org.junit.*;
 import fr.unice.polytech.soa1.cookbook.data.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
 
@@ -34,6 +38,41 @@ public class TaxComputationTest extends TestCase {
 		assertEquals(res2.getAmount(), 26.0f);
 	}
 
+	@Test
+	public void test_simple_batch_method() {
+		List<SimpleTaxRequest> requests = new ArrayList<SimpleTaxRequest>();
+		requests.add(buildSimpleTaxRequest(100));
+		requests.add(buildSimpleTaxRequest(200));
+		List<TaxComputation> results = service.simpleBatch(requests);
+		assertEquals(2, results.size());
+		assertEquals(requests.get(0).getIdentifier(), results.get(0).getIdentifier());
+		assertEquals(results.get(0).getAmount(), 20.0f);
+		assertEquals(requests.get(1).getIdentifier(), results.get(1).getIdentifier());
+		assertEquals(results.get(1).getAmount(), 40.0f);
+	}
+
+	@Test
+	public void test_complex_batch_method() {
+		List<AdvancedTaxRequest> requests = new ArrayList<AdvancedTaxRequest>();
+		requests.add(buildAdvancedTaxRequest(100, 50, "1000"));
+		requests.add(buildAdvancedTaxRequest(100, 50, "2000"));
+		List<TaxComputation> results = service.complexBatch(requests);
+		assertEquals(2, results.size());
+		assertEquals(requests.get(0).getIdentifier(), results.get(0).getIdentifier());
+		assertEquals(results.get(0).getAmount(), 23.0f);
+		assertEquals(requests.get(1).getIdentifier(), results.get(1).getIdentifier());
+		assertEquals(results.get(1).getAmount(), 26.0f);
+	}
+
+	@Test
+	public void test_response_date() {
+		long before = System.currentTimeMillis();
+		TaxComputation result = service.simple(buildSimpleTaxRequest(100));
+		long after = System.currentTimeMillis();
+		assertTrue(before <= result.getEpoch() && result.getEpoch() <= after);
+		assertEquals(new Date(result.getEpoch()).toString(), result.getDate());
+	}
+
 	/**
 	 * Private helpers
 	 */
@@ -0,0 +1,58 @@
+package fr.unice.polytech.soa1.cookbook;
+
+import junit.framework.TestCase;
+import org.junit.*;
+import fr.unice.polytech.soa1.cookbook.data.*;
+
+import java.util.Random;
+
+
+public class TaxEngineTest extends TestCase {
+
+	private TaxComputationImpl service = null;
+	protected void setUp() { this.service = new TaxComputationImpl(); }
+
+	@Test
+	public void test_simple_engine() {
+		float[] amounts = new float[2];
+		TaxEngine.simple(new float[] { 100, 200 }, amounts, 2);
+		assertEquals(amounts[0], 20.0f);
+		assertEquals(amounts[1], 40.0f);
+	}
+
+	@Test
+	public void test_complex_engine() {
+		float[] amounts = new float[2];
+		byte[] zones = TaxEngine.zoneClasses(new String[] { "1000", "2000" });
+		TaxEngine.complex(new float[] { 100, 100 }, new float[] { 50, 50 }, zones, amounts, 2);
+		assertEquals(amounts[0], 23.0f); // Countryside computation
+		assertEquals(amounts[1], 26.0f); // Urban computation
+	}
+
+	@Test
+	public void test_engine_matches_service() {
+		Random random = new Random(42);
+		int count = 100000;
+		float[] income = new float[count];
+		float[] assets = new float[count];
+		String[] codes = new String[count];
+		for(int i = 0; i < count; i++) {
+			income[i] = random.nextInt(1000000) / (random.nextBoolean() ? 1f : 7f);
+			assets[i] = random.nextInt(10000000) / (random.nextBoolean() ? 1f : 3f);
+			codes[i] = String.valueOf(random.nextInt(99999));
+		}
+		float[] simple = new float[count];
+		float[] complex = new float[count];
+		TaxEngine.simple(income, simple, count);
+		TaxEngine.complex(income, assets, TaxEngine.zoneClasses(codes), complex, count);
+		for(int i = 0; i < count; i++) {
+			SimpleTaxRequest request = new SimpleTaxRequest();
+			request.setIncome(income[i]);
+			float expectedSimple = service.simple(request).getAmount();
+			float expectedComplex = service.computeIncome(income[i], codes[i]) + service.computeAssets(assets[i], codes[i]);
+			assertEquals(Float.floatToIntBits(expectedSimple), Float.floatToIntBits(simple[i]));
+			assertEquals(Float.floatToIntBits(expectedComplex), Float.floatToIntBits(complex[i]));
+		}
+	}
+
+}